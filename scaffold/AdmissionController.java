@@ -0,0 +1,200 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+// Executor for server requests that limits the number of requests in the system, queued or running,
+// so that accepted requests finish within their deadlines under overload. The limit adapts with
+// additive increase and multiplicative decrease (AIMD): it grows slowly while requests finish
+// within the target latency and shrinks quickly when they do not. Requests over the limit, or that
+// would wait in the queue past the deadline, are not queued behind admitted requests: they run on a
+// small separate pool marked as rejected so that the handler can respond without doing any work,
+// and the calling thread goes straight back to accepting requests.
+public class AdmissionController implements Executor {
+    private final ThreadPoolExecutor workers;
+    private final ThreadPoolExecutor rejections;
+    private final int threads;
+    private final long deadline;
+    private final long target;
+    private final int maxLimit;
+    private final ThreadLocal<Ticket> tickets;
+    private final AtomicInteger inFlight;
+    // The limit, stored as the bits of a double so that workers can update it with
+    // compare-and-set, and the time it last decreased in System.nanoTime units.
+    private final AtomicLong limit;
+    private final AtomicLong lastDecrease;
+    // Moving average of service times in nanoseconds, stored as the bits of a double so that
+    // concurrent workers can update it with compare-and-set.
+    private final AtomicLong serviceTime;
+    private final LongAdder admitted;
+    private final LongAdder overLimit;
+    private final LongAdder overDeadline;
+    private final LongAdder expired;
+
+    // The smallest allowed limit.
+    private static final int MIN_LIMIT = 1;
+    // The factor applied to the limit when requests take longer than the target latency.
+    private static final double DECREASE = 0.9;
+    // Weight of the latest request in the moving average of service times.
+    private static final double ALPHA = 0.05;
+    // The number of threads that respond to rejected requests, and the number of rejected requests
+    // that may wait for them before the calling thread has to respond itself.
+    private static final int REJECTION_THREADS = 1;
+    private static final int REJECTION_QUEUE = 1024;
+
+    // The admission decision for a request, available to the handler through ticket().
+    public static class Ticket {
+        // HTTP status to respond with, or 0 if the request was admitted.
+        public final int status;
+        // The time that the request was admitted or rejected, in System.nanoTime units.
+        public final long arrival;
+
+        // Constructs a new Ticket with the given status and arrival time.
+        public Ticket(int status, long arrival) {
+            this.status = status;
+            this.arrival = arrival;
+        }
+
+        // Returns true if and only if the request was admitted.
+        public boolean admitted() {
+            return status == 0;
+        }
+    }
+
+    // Constructs a new AdmissionController that runs requests on the given number of threads and
+    // aims to finish each request within the given deadline in milliseconds. Requests over the
+    // limit are rejected with status 429 and requests that would miss the deadline with status 503.
+    public AdmissionController(int threads, long deadlineMillis) {
+        if (threads < 1 || deadlineMillis < 1) {
+            throw new IllegalArgumentException("threads and deadline must be positive");
+        }
+        this.workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                                              new LinkedBlockingQueue<>());
+        this.rejections = new ThreadPoolExecutor(REJECTION_THREADS, REJECTION_THREADS, 0L,
+                                                 TimeUnit.MILLISECONDS,
+                                                 new ArrayBlockingQueue<>(REJECTION_QUEUE),
+                                                 new ThreadPoolExecutor.CallerRunsPolicy());
+        this.threads = threads;
+        this.deadline = TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+        this.target = this.deadline / 2;
+        this.maxLimit = 16 * threads;
+        this.tickets = new ThreadLocal<>();
+        this.inFlight = new AtomicInteger();
+        this.limit = new AtomicLong(Double.doubleToLongBits(2 * threads));
+        this.lastDecrease = new AtomicLong(System.nanoTime());
+        this.serviceTime = new AtomicLong(Double.doubleToLongBits(0.0));
+        this.admitted = new LongAdder();
+        this.overLimit = new LongAdder();
+        this.overDeadline = new LongAdder();
+        this.expired = new LongAdder();
+    }
+
+    // Admits the given request and runs it on a worker thread, or runs it on a rejection thread
+    // marked as rejected.
+    public void execute(Runnable command) {
+        long now = System.nanoTime();
+        if (inFlight.incrementAndGet() > limit()) {
+            inFlight.decrementAndGet();
+            overLimit.increment();
+            reject(command, new Ticket(429, now));
+            return;
+        }
+        double wait = workers.getQueue().size() * serviceTime() / threads;
+        if (wait > deadline) {
+            inFlight.decrementAndGet();
+            overDeadline.increment();
+            reject(command, new Ticket(503, now));
+            return;
+        }
+        admitted.increment();
+        Ticket ticket = new Ticket(0, now);
+        workers.execute(() -> {
+            long start = System.nanoTime();
+            tickets.set(ticket);
+            try {
+                command.run();
+            } finally {
+                tickets.remove();
+                long end = System.nanoTime();
+                inFlight.decrementAndGet();
+                serviceTime.getAndUpdate(bits -> {
+                    double average = Double.longBitsToDouble(bits);
+                    return Double.doubleToLongBits(average + ALPHA * ((end - start) - average));
+                });
+                update(end - ticket.arrival, end);
+            }
+        });
+    }
+
+    // Runs the given request on a rejection thread with the given rejection ticket.
+    private void reject(Runnable command, Ticket ticket) {
+        rejections.execute(() -> {
+            tickets.set(ticket);
+            try {
+                command.run();
+            } finally {
+                tickets.remove();
+            }
+        });
+    }
+
+    // Returns the moving average of service times in nanoseconds.
+    private double serviceTime() {
+        return Double.longBitsToDouble(serviceTime.get());
+    }
+
+    // Returns the admission decision for the request running on the current thread, or null if the
+    // current thread is not running a request.
+    public Ticket ticket() {
+        return tickets.get();
+    }
+
+    // Returns true if the request running on the current thread can no longer finish within the
+    // given deadline in milliseconds, or the default deadline if the given deadline is not positive
+    // or is longer. Counts the request as expired if so.
+    public boolean expired(long deadlineMillis) {
+        Ticket ticket = tickets.get();
+        long deadline = this.deadline;
+        if (deadlineMillis > 0) {
+            deadline = Math.min(deadline, TimeUnit.MILLISECONDS.toNanos(deadlineMillis));
+        }
+        if (ticket != null && System.nanoTime() - ticket.arrival > deadline) {
+            expired.increment();
+            return true;
+        }
+        return false;
+    }
+
+    // Returns the current limit on the number of requests in the system.
+    public int limit() {
+        return (int) Double.longBitsToDouble(limit.get());
+    }
+
+    // Updates the limit after a request finished with the given latency at the given time.
+    private void update(long latency, long now) {
+        if (latency <= target) {
+            limit.getAndUpdate(bits -> {
+                double current = Double.longBitsToDouble(bits);
+                return Double.doubleToLongBits(Math.min(maxLimit, current + 1.0 / current));
+            });
+            return;
+        }
+        // Decrease at most once per target interval since the requests that finish late together
+        // were all admitted under the same limit. Only the worker that claims the interval does.
+        long last = lastDecrease.get();
+        if (now - last > target && lastDecrease.compareAndSet(last, now)) {
+            limit.getAndUpdate(bits -> {
+                double current = Double.longBitsToDouble(bits);
+                return Double.doubleToLongBits(Math.max(MIN_LIMIT, current * DECREASE));
+            });
+        }
+    }
+
+    public String toString() {
+        return String.format(Locale.ROOT,
+                             "{\"limit\": %d, \"inFlight\": %d, \"admitted\": %d, "
+                             + "\"overLimit\": %d, \"overDeadline\": %d, \"expired\": %d, "
+                             + "\"serviceMillis\": %.3f}",
+                             limit(), inFlight.get(), admitted.sum(), overLimit.sum(),
+                             overDeadline.sum(), expired.sum(), serviceTime() / 1e6);
+    }
+}
@@ -0,0 +1,78 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+public class AdmissionControllerTest {
+
+    @Test
+    @DisplayName("requests over the limit are rejected off the calling thread")
+    public void testRejectOffCallingThread() throws InterruptedException {
+        // One thread starts with a limit of 2 requests in the system.
+        AdmissionController admission = new AdmissionController(1, 10000);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(3);
+        List<AdmissionController.Ticket> tickets = Collections.synchronizedList(new ArrayList<>());
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        for (int i = 0; i < 3; i += 1) {
+            admission.execute(() -> {
+                AdmissionController.Ticket ticket = admission.ticket();
+                tickets.add(ticket);
+                threads.add(Thread.currentThread());
+                if (ticket.admitted()) {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                done.countDown();
+            });
+        }
+        // The rejection ran while both admitted requests were still in the system.
+        assertTrue(waitFor(() -> tickets.size() == 2));
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(1, tickets.stream().filter(ticket -> ticket.status == 429).count());
+        assertFalse(threads.contains(Thread.currentThread()));
+        assertEquals(2, threads.size());
+        assertNull(admission.ticket());
+    }
+
+    @Test
+    @DisplayName("concurrent completions keep the service time average finite and positive")
+    public void testServiceTime() throws InterruptedException {
+        AdmissionController admission = new AdmissionController(4, 10000);
+        CountDownLatch done = new CountDownLatch(8);
+        for (int i = 0; i < 8; i += 1) {
+            admission.execute(() -> {
+                long start = System.nanoTime();
+                while (System.nanoTime() - start < 1_000_000) {
+                    Thread.onSpinWait();
+                }
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(waitFor(() -> admission.toString().contains("\"inFlight\": 0")));
+        String stats = admission.toString();
+        double millis = Double.parseDouble(
+            stats.replaceFirst(".*\"serviceMillis\": ([0-9.]+).*", "$1")
+        );
+        assertTrue(millis > 0.0 && millis < 1000.0, stats);
+    }
+
+    // Returns true once the given condition holds, or false if it does not within 10 seconds.
+    private static boolean waitFor(java.util.function.BooleanSupplier condition)
+            throws InterruptedException {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > end) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+}
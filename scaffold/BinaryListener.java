@@ -0,0 +1,328 @@
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Serves classification over a length-prefixed binary protocol on persistent TCP connections, which
+// avoids the per-request HTTP overhead for service-to-service scoring. Clients may pipeline any
+// number of frames without waiting for responses, which are sent back in request order.
+//
+// Every frame starts with the 4-byte big-endian length of the rest of the frame. A request holds a
+// 1-byte length followed by the UTF-8 comma-separated names of the models to query, or no names for
+// the default model, then a 4-byte count of messages and each message as a 4-byte length followed
+// by its UTF-8 text. A response holds the 4-byte count of messages followed by one bit for each
+// message and model, message-major and least significant bit first, padded to a whole byte; or a
+// count of -1 and no bits if a model does not exist, or -2 and no bits if the request was shed by
+// admission control or a model is still loading, in which case the client may retry later.
+// Malformed frames close the connection.
+//
+// The selector thread only moves bytes: it splits the input into frames and hands each one to the
+// admission controller, whose workers decode and classify it, so binary requests share the
+// concurrency limit and deadlines of HTTP queries.
+public class BinaryListener implements Runnable {
+    private final ServerSocketChannel channel;
+    private final Selector selector;
+    private final ModelRegistry models;
+    private final String defaultModel;
+    private final AdmissionController admission;
+    // Connections with frames answered by a worker since the selector thread last looked.
+    private final Queue<Connection> ready;
+
+    // The longest allowed frame in bytes, not counting its length.
+    private static final int MAX_FRAME = 16 << 20;
+    // The initial size in bytes of the input and output buffers of each connection.
+    private static final int BUFFER_SIZE = 64 << 10;
+    // The largest number of frames of one connection handed to workers and not yet sent back.
+    // Reading from the connection stops at this limit, so one client cannot queue unbounded work.
+    private static final int MAX_PENDING = 64;
+    // Response counts for a model that does not exist and for a request that should be retried.
+    private static final int MISSING = -1;
+    private static final int RETRY = -2;
+
+    // A request frame and its response, set by a worker once the frame is answered.
+    private static class Frame {
+        public final byte[] request;
+        // The response including its length, or null if the frame is not answered yet or malformed.
+        public volatile ByteBuffer response;
+        // True once a worker is done with this frame.
+        public volatile boolean done;
+
+        public Frame(byte[] request) {
+            this.request = request;
+        }
+    }
+
+    // The buffers of a connection, reused for every frame it sends and receives, and its frames in
+    // request order. Both buffers are kept in write mode between events. A buffer only grows when a
+    // frame does not fit. Only the selector thread uses the buffers and the pending queue.
+    private static class Connection {
+        public final SelectionKey key;
+        public ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+        public ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+        public final Deque<Frame> pending = new ArrayDeque<>();
+
+        public Connection(SelectionKey key) {
+            this.key = key;
+        }
+    }
+
+    // Constructs a new BinaryListener on the given port that queries the given models, using the
+    // model with the given name when a request does not name any, and answering requests on the
+    // workers of the given admission controller. Port 0 picks any free port.
+    public BinaryListener(int port, ModelRegistry models, String defaultModel,
+                          AdmissionController admission) throws IOException {
+        this.channel = ServerSocketChannel.open();
+        this.channel.bind(new InetSocketAddress(port));
+        this.channel.configureBlocking(false);
+        this.selector = Selector.open();
+        this.channel.register(selector, SelectionKey.OP_ACCEPT);
+        this.models = models;
+        this.defaultModel = defaultModel;
+        this.admission = admission;
+        this.ready = new ConcurrentLinkedQueue<>();
+    }
+
+    // Returns the port that this listener accepts connections on.
+    public int port() throws IOException {
+        return ((InetSocketAddress) channel.getLocalAddress()).getPort();
+    }
+
+    // Accepts connections and moves their frames on the calling thread until interrupted.
+    public void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                System.err.println("Binary listener stopped: " + e);
+                return;
+            }
+            Connection answered;
+            while ((answered = ready.poll()) != null) {
+                service(answered.key);
+            }
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (key.isValid() && key.isAcceptable()) {
+                    try {
+                        accept();
+                    } catch (IOException e) {
+                        System.err.println("Binary listener could not accept: " + e);
+                    }
+                } else if (key.isValid() && key.isReadable()) {
+                    read(key);
+                } else if (key.isValid() && key.isWritable()) {
+                    service(key);
+                }
+            }
+        }
+    }
+
+    // Accepts a pending connection, if any.
+    private void accept() throws IOException {
+        SocketChannel client = channel.accept();
+        if (client != null) {
+            client.configureBlocking(false);
+            client.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            SelectionKey key = client.register(selector, SelectionKey.OP_READ);
+            key.attach(new Connection(key));
+        }
+    }
+
+    // Reads from the given connection and services it.
+    private void read(SelectionKey key) {
+        Connection connection = (Connection) key.attachment();
+        try {
+            if (((SocketChannel) key.channel()).read(connection.in) < 0) {
+                close(key);
+                return;
+            }
+        } catch (IOException e) {
+            close(key);
+            return;
+        }
+        service(key);
+    }
+
+    // Sends the answered frames of the given connection in request order, hands its complete input
+    // frames to workers, and writes as much output as possible. Stops reading from the connection
+    // until all of its output is written and while MAX_PENDING frames are unanswered, so slow
+    // readers cannot grow the output buffer. A connection that fails for any reason is closed
+    // without affecting the others.
+    private void service(SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+        Connection connection = (Connection) key.attachment();
+        try {
+            while (!connection.pending.isEmpty() && connection.pending.peek().done) {
+                ByteBuffer response = connection.pending.poll().response;
+                if (response == null) {
+                    close(key);
+                    return;
+                }
+                reserve(connection, response.remaining()).put(response);
+            }
+            if (!frames(connection)) {
+                close(key);
+                return;
+            }
+            connection.out.flip();
+            ((SocketChannel) key.channel()).write(connection.out);
+            connection.out.compact();
+            int ops = 0;
+            if (connection.out.position() > 0) {
+                ops = SelectionKey.OP_WRITE;
+            } else if (connection.pending.size() < MAX_PENDING) {
+                ops = SelectionKey.OP_READ;
+            }
+            key.interestOps(ops);
+        } catch (IOException | RuntimeException e) {
+            close(key);
+        }
+    }
+
+    private void close(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+
+    // Hands every complete frame in the input buffer of the given connection to a worker, up to
+    // MAX_PENDING unanswered frames, leaving the rest in the buffer. Returns false if a frame
+    // length is invalid.
+    private boolean frames(Connection connection) {
+        ByteBuffer in = connection.in;
+        in.flip();
+        int needed = 0;
+        try {
+            while (in.remaining() >= Integer.BYTES && connection.pending.size() < MAX_PENDING) {
+                int length = in.getInt(in.position());
+                if (length < 0 || length > MAX_FRAME) {
+                    return false;
+                }
+                if (in.remaining() < Integer.BYTES + length) {
+                    needed = Integer.BYTES + length;
+                    break;
+                }
+                in.position(in.position() + Integer.BYTES);
+                Frame frame = new Frame(new byte[length]);
+                in.get(frame.request);
+                connection.pending.add(frame);
+                admission.execute(() -> {
+                    try {
+                        frame.response = answer(frame.request);
+                    } catch (RuntimeException e) {
+                        // Close the connection as if the frame were malformed.
+                    }
+                    frame.done = true;
+                    ready.add(connection);
+                    selector.wakeup();
+                });
+            }
+        } finally {
+            in.compact();
+        }
+        if (needed > in.capacity()) {
+            in.flip();
+            connection.in = ByteBuffer.allocate(Math.max(needed, 2 * in.capacity())).put(in);
+        }
+        return true;
+    }
+
+    // Returns the response, including its length, to the given request frame, or null if the frame
+    // is malformed. Runs on a worker of the admission controller.
+    private ByteBuffer answer(byte[] request) {
+        AdmissionController.Ticket ticket = admission.ticket();
+        if (ticket != null && (!ticket.admitted() || admission.expired(0))) {
+            return status(RETRY);
+        }
+        // Every read below is bounded by the end of this frame, not by the connection's input.
+        ByteBuffer in = ByteBuffer.wrap(request);
+        String[] names = new String[]{defaultModel};
+        int nameLength = in.get() & 0xff;
+        if (nameLength > 0) {
+            names = text(in, nameLength).split(",");
+        }
+        int count = in.getInt();
+        if (count < 0 || count > in.remaining() / Integer.BYTES) {
+            return null;
+        }
+        ModelRegistry.Model[] queried = new ModelRegistry.Model[names.length];
+        try {
+            for (int j = 0; j < names.length; j += 1) {
+                queried[j] = models.get(names[j]);
+            }
+        } catch (NoSuchElementException e) {
+            return status(MISSING);
+        } catch (IOException e) {
+            // The model is loading or failed to load.
+            return status(RETRY);
+        }
+
+        int bits = count * names.length;
+        int length = Integer.BYTES + (bits + 7) / 8;
+        ByteBuffer out = ByteBuffer.allocate(Integer.BYTES + length);
+        out.putInt(length).putInt(count);
+        int bit = 0;
+        byte current = 0;
+        for (int i = 0; i < count; i += 1) {
+            int textLength = in.getInt();
+            if (textLength < 0) {
+                return null;
+            }
+            // Process each message once no matter how many models are queried.
+            Vectorizer.BagOfWords document = Vectorizer.BagOfWords.from(text(in, textLength));
+            for (ModelRegistry.Model model : queried) {
+                if (model.classify(document)) {
+                    current |= 1 << (bit % 8);
+                }
+                bit += 1;
+                if (bit % 8 == 0) {
+                    out.put(current);
+                    current = 0;
+                }
+            }
+        }
+        if (bit % 8 != 0) {
+            out.put(current);
+        }
+        return in.hasRemaining() ? null : out.flip();
+    }
+
+    // Returns a response with the given count and no bits.
+    private static ByteBuffer status(int count) {
+        return ByteBuffer.allocate(2 * Integer.BYTES).putInt(Integer.BYTES).putInt(count).flip();
+    }
+
+    // Returns the next given number of bytes of the given buffer decoded as UTF-8, throwing
+    // BufferUnderflowException if the buffer ends first.
+    private static String text(ByteBuffer in, int length) {
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String result = new String(in.array(), in.arrayOffset() + in.position(), length,
+                                   StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return result;
+    }
+
+    // Returns the output buffer of the given connection after growing it if needed to fit the given
+    // number of bytes.
+    private static ByteBuffer reserve(Connection connection, int bytes) {
+        ByteBuffer out = connection.out;
+        if (out.remaining() < bytes) {
+            out.flip();
+            connection.out = ByteBuffer.allocate(Math.max(out.limit() + bytes, 2 * out.capacity()))
+                                       .put(out);
+        }
+        return connection.out;
+    }
+}
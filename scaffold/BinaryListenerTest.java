@@ -0,0 +1,153 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.*;
+import java.time.*;
+import java.util.*;
+
+public class BinaryListenerTest {
+    private static ModelRegistry models;
+    private static final List<Thread> threads = new ArrayList<>();
+    // A listener whose admission limit is above the number of frames any test sends at once.
+    private static int port;
+
+    @BeforeAll
+    public static void start() throws IOException {
+        models = new ModelRegistry(1L << 30);
+        models.register("tiny", new File("tiny.tsv"));
+        models.load("tiny");
+        port = listen(new AdmissionController(8, 10000));
+    }
+
+    // Starts a listener for the tiny model under the given admission controller and returns its
+    // port.
+    private static int listen(AdmissionController admission) throws IOException {
+        BinaryListener listener = new BinaryListener(0, models, "tiny", admission);
+        Thread thread = new Thread(listener, "binary");
+        thread.setDaemon(true);
+        thread.start();
+        threads.add(thread);
+        return listener.port();
+    }
+
+    @AfterAll
+    public static void stop() {
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+    }
+
+    // Returns a request frame, including its length, for the given model names and messages.
+    private static byte[] frame(String names, String... messages) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream body = new DataOutputStream(bytes);
+        byte[] name = names.getBytes(StandardCharsets.UTF_8);
+        body.writeByte(name.length);
+        body.write(name);
+        body.writeInt(messages.length);
+        for (String message : messages) {
+            byte[] text = message.getBytes(StandardCharsets.UTF_8);
+            body.writeInt(text.length);
+            body.write(text);
+        }
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        new DataOutputStream(result).writeInt(bytes.size());
+        bytes.writeTo(result);
+        return result.toByteArray();
+    }
+
+    // Reads one response and returns its count followed by one entry for each bit.
+    private static int[] response(DataInputStream input) throws IOException {
+        byte[] body = new byte[input.readInt()];
+        input.readFully(body);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        int count = in.readInt();
+        int[] result = new int[1 + Math.max(0, count)];
+        result[0] = count;
+        for (int i = 0; i < count; i += 8) {
+            int bits = in.readUnsignedByte();
+            for (int k = i; k < Math.min(count, i + 8); k += 1) {
+                result[1 + k] = (bits >> (k - i)) & 1;
+            }
+        }
+        return result;
+    }
+
+    @Test
+    @DisplayName("pipelined frames are answered in request order")
+    public void testPipelined() throws IOException {
+        Dataset data = new Dataset(new File("tiny.tsv"));
+        ModelRegistry.Model model = models.get("tiny");
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            try (Socket socket = new Socket("localhost", port)) {
+                OutputStream output = socket.getOutputStream();
+                for (String message : data.messages) {
+                    output.write(frame("", message, message));
+                }
+                output.write(frame("missing", "hello"));
+                output.flush();
+                DataInputStream input = new DataInputStream(socket.getInputStream());
+                for (String message : data.messages) {
+                    int expected = model.classify(message) ? 1 : 0;
+                    assertArrayEquals(new int[]{2, expected, expected}, response(input));
+                }
+                assertArrayEquals(new int[]{-1}, response(input));
+            }
+        });
+    }
+
+    @Test
+    @DisplayName("frames over the admission limit are answered with a retry count")
+    public void testShed() throws IOException {
+        // One thread admits at most 2 frames at a time.
+        int shedPort = listen(new AdmissionController(1, 10000));
+        ModelRegistry.Model model = models.get("tiny");
+        String message = "free prize";
+        int expected = model.classify(message) ? 1 : 0;
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            try (Socket socket = new Socket("localhost", shedPort)) {
+                OutputStream output = socket.getOutputStream();
+                for (int i = 0; i < 50; i += 1) {
+                    output.write(frame("", message));
+                }
+                output.flush();
+                DataInputStream input = new DataInputStream(socket.getInputStream());
+                int shed = 0;
+                for (int i = 0; i < 50; i += 1) {
+                    int[] answer = response(input);
+                    if (answer[0] == -2) {
+                        shed += 1;
+                    } else {
+                        assertArrayEquals(new int[]{1, expected}, answer);
+                    }
+                }
+                assertTrue(shed > 0);
+            }
+        });
+    }
+
+    @Test
+    @DisplayName("a name running past the end of its frame closes only that connection")
+    public void testNameLengthPastFrame() throws IOException {
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            try (Socket bad = new Socket("localhost", port);
+                 Socket good = new Socket("localhost", port)) {
+                // A 1-byte frame whose name length claims 100 bytes, followed by a valid frame
+                // whose bytes the name would otherwise be read from.
+                byte[] valid = frame("", "free prize");
+                byte[] bytes = new byte[5 + valid.length];
+                bytes[3] = 1;
+                bytes[4] = 100;
+                System.arraycopy(valid, 0, bytes, 5, valid.length);
+                bad.getOutputStream().write(bytes);
+                assertEquals(-1, bad.getInputStream().read());
+
+                good.getOutputStream().write(frame("tiny", "free prize"));
+                int[] answer = response(new DataInputStream(good.getInputStream()));
+                assertEquals(1, answer[0]);
+            }
+        });
+    }
+}
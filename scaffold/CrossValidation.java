@@ -0,0 +1,204 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Compares vectorizer and splitter hyperparameters with k-fold cross-validation. Every message is
+// tokenized and stemmed once, and the folds of all hyperparameter combinations train concurrently
+// from the shared processed messages.
+public class CrossValidation {
+    // The default number of folds.
+    private static final int DEFAULT_FOLDS = 5;
+
+    // Hyperparameter values to try. Every combination is cross-validated.
+    private static final double[] MIN_DF = {0.001, Vectorizer.MIN_DF};
+    private static final double[] MAX_DF = {Vectorizer.MAX_DF, 0.1};
+    private static final double[] K1 = {Vectorizer.K1};
+    private static final double[] B = {Vectorizer.B};
+    private static final double[] MIN_IMPURITY_DECREASE = {
+        GiniSplitter.MIN_IMPURITY_DECREASE, 0.0005
+    };
+    private static final int[] MIN_SIZE_SPLIT = {GiniSplitter.MIN_SIZE_SPLIT, 20};
+    // Prune depths to evaluate for each trained tree. Pruning does not require retraining.
+    private static final int[] DEPTHS = {5, 10, Integer.MAX_VALUE};
+
+    // One combination of hyperparameters.
+    private static class Config {
+        public final double minDf;
+        public final double maxDf;
+        public final double k1;
+        public final double b;
+        public final double minImpurityDecrease;
+        public final int minSizeSplit;
+
+        // Constructs a new Config with the given hyperparameters.
+        public Config(double minDf, double maxDf, double k1, double b, double minImpurityDecrease,
+                      int minSizeSplit) {
+            this.minDf = minDf;
+            this.maxDf = maxDf;
+            this.k1 = k1;
+            this.b = b;
+            this.minImpurityDecrease = minImpurityDecrease;
+            this.minSizeSplit = minSizeSplit;
+        }
+
+        public String toString() {
+            return String.format("minDf=%-6s maxDf=%-5s k1=%-4s b=%-5s minDecrease=%-7s "
+                                 + "minSplit=%-3d", minDf, maxDf, k1, b, minImpurityDecrease,
+                                 minSizeSplit);
+        }
+    }
+
+    // Confusion counts and timings for one fold of one configuration, with one set of counts for
+    // each prune depth.
+    private static class Result {
+        public final int[] truePositives = new int[DEPTHS.length];
+        public final int[] falsePositives = new int[DEPTHS.length];
+        public final int[] falseNegatives = new int[DEPTHS.length];
+        public final int[] trueNegatives = new int[DEPTHS.length];
+        public long trainNanos;
+        public long inferenceNanos;
+
+        // Adds the counts and timings of the given result to this result.
+        public void add(Result other) {
+            for (int d = 0; d < DEPTHS.length; d += 1) {
+                truePositives[d] += other.truePositives[d];
+                falsePositives[d] += other.falsePositives[d];
+                falseNegatives[d] += other.falseNegatives[d];
+                trueNegatives[d] += other.trueNegatives[d];
+            }
+            trainNanos += other.trainNanos;
+            inferenceNanos += other.inferenceNanos;
+        }
+    }
+
+    // Trains a model with the given configuration on every fold but the given fold and returns its
+    // results on the given fold.
+    private static Result evaluate(Config config, Vectorizer.BagOfWords[] corpus, boolean[] labels,
+                                   int folds, int fold) {
+        List<Vectorizer.BagOfWords> train = new ArrayList<>();
+        List<Vectorizer.BagOfWords> test = new ArrayList<>();
+        List<Boolean> trainLabels = new ArrayList<>();
+        List<Boolean> testLabels = new ArrayList<>();
+        for (int i = 0; i < corpus.length; i += 1) {
+            if (i % folds == fold) {
+                test.add(corpus[i]);
+                testLabels.add(labels[i]);
+            } else {
+                train.add(corpus[i]);
+                trainLabels.add(labels[i]);
+            }
+        }
+        boolean[] y = new boolean[train.size()];
+        double[] weights = new double[train.size()];
+        for (int i = 0; i < y.length; i += 1) {
+            y[i] = trainLabels.get(i);
+            weights[i] = 1.0;
+        }
+
+        Result result = new Result();
+        long start = System.nanoTime();
+        Vectorizer vectorizer = new Vectorizer(config.minDf, config.maxDf, config.k1, config.b);
+        double[][] matrix = vectorizer.fitTransform(train.toArray(new Vectorizer.BagOfWords[0]));
+        TextClassifier clf = new TextClassifier(vectorizer, new GiniSplitter(
+            matrix, y, weights,
+            new GiniSplitter.Parameters(config.minImpurityDecrease, config.minSizeSplit)
+        ));
+        result.trainNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        double[][] vectors = vectorizer.transform(test.toArray(new Vectorizer.BagOfWords[0]));
+        // Depths are in ascending order, so each depth is evaluated after pruning the tree further.
+        for (int d = DEPTHS.length - 1; d >= 0; d -= 1) {
+            clf.prune(DEPTHS[d]);
+            for (int i = 0; i < vectors.length; i += 1) {
+                boolean actual = testLabels.get(i);
+                boolean predicted = clf.classify(vectors[i]);
+                if (predicted && actual) {
+                    result.truePositives[d] += 1;
+                } else if (predicted) {
+                    result.falsePositives[d] += 1;
+                } else if (actual) {
+                    result.falseNegatives[d] += 1;
+                } else {
+                    result.trueNegatives[d] += 1;
+                }
+            }
+        }
+        result.inferenceNanos = System.nanoTime() - start;
+        return result;
+    }
+
+    public static void main(String[] args) throws FileNotFoundException, InterruptedException,
+                                                  ExecutionException {
+        if (args.length != 1 && args.length != 2) {
+            throw new IllegalArgumentException("java CrossValidation [tsv file] [folds]");
+        }
+        Dataset data = new Dataset(new File(args[0]));
+        int folds = args.length == 2 ? Integer.parseInt(args[1]) : DEFAULT_FOLDS;
+        if (folds < 2 || folds > data.size()) {
+            throw new IllegalArgumentException("folds must be between 2 and the number of rows");
+        }
+
+        long start = System.nanoTime();
+        Vectorizer.BagOfWords[] corpus = Arrays.stream(data.messages)
+                                               .parallel()
+                                               .map(Vectorizer.BagOfWords::from)
+                                               .toArray(Vectorizer.BagOfWords[]::new);
+        System.out.printf("Processed %d messages in %.2f s%n", corpus.length,
+                          (System.nanoTime() - start) / 1e9);
+
+        List<Config> configs = new ArrayList<>();
+        for (double minDf : MIN_DF) {
+            for (double maxDf : MAX_DF) {
+                for (double k1 : K1) {
+                    for (double b : B) {
+                        for (double minImpurityDecrease : MIN_IMPURITY_DECREASE) {
+                            for (int minSizeSplit : MIN_SIZE_SPLIT) {
+                                configs.add(new Config(minDf, maxDf, k1, b, minImpurityDecrease,
+                                                       minSizeSplit));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors()
+        );
+        List<List<Future<Result>>> futures = new ArrayList<>();
+        for (Config config : configs) {
+            List<Future<Result>> configFutures = new ArrayList<>();
+            for (int fold = 0; fold < folds; fold += 1) {
+                int f = fold;
+                configFutures.add(pool.submit(
+                    () -> evaluate(config, corpus, data.labels, folds, f)
+                ));
+            }
+            futures.add(configFutures);
+        }
+
+        System.out.printf("%-74s %-5s %8s %9s %6s %8s %10s%n", "configuration", "depth",
+                          "accuracy", "precision", "recall", "train s", "predict ms");
+        for (int c = 0; c < configs.size(); c += 1) {
+            Result total = new Result();
+            for (Future<Result> future : futures.get(c)) {
+                total.add(future.get());
+            }
+            for (int d = 0; d < DEPTHS.length; d += 1) {
+                int tp = total.truePositives[d];
+                int fp = total.falsePositives[d];
+                int fn = total.falseNegatives[d];
+                int tn = total.trueNegatives[d];
+                System.out.printf("%-74s %-5s %8.4f %9.4f %6.4f %8.2f %10.1f%n", configs.get(c),
+                                  DEPTHS[d] == Integer.MAX_VALUE ? "all" : DEPTHS[d],
+                                  (tp + tn) / (double) (tp + fp + fn + tn),
+                                  tp + fp == 0 ? 0.0 : tp / (double) (tp + fp),
+                                  tp + fn == 0 ? 0.0 : tp / (double) (tp + fn),
+                                  total.trainNanos / 1e9 / folds,
+                                  total.inferenceNanos / 1e6 / folds);
+            }
+        }
+        pool.shutdown();
+    }
+}
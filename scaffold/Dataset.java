@@ -0,0 +1,99 @@
+import java.io.*;
+import java.util.*;
+
+// Labeled messages read from a tsv file with a header row followed by one or more labels and a
+// message per row. The header names each column.
+public class Dataset {
+    // The name of each label column.
+    public final String[] names;
+    // The messages in file order.
+    public final String[] messages;
+    // The label for each message from the first label column.
+    public final boolean[] labels;
+    // The labels for each message from every label column, indexed by column and then message.
+    private final boolean[][] columns;
+    // The number of rows that each message represents.
+    public final double[] weights;
+
+    // Constructs a new Dataset with one row per line in the given tsv file.
+    public Dataset(File file) throws FileNotFoundException {
+        this(file, false);
+    }
+
+    // Constructs a new Dataset from the given tsv file. If collapse is true, rows with the same
+    // label and the same message after normalizing whitespace are collapsed into one row at the
+    // position of the first copy, weighted by the number of copies.
+    public Dataset(File file, boolean collapse) throws FileNotFoundException {
+        Scanner input = new Scanner(file);
+        String[] header = input.nextLine().split("\t");
+        int N = 0;
+        while (input.hasNextLine()) {
+            N += 1;
+            input.nextLine();
+        }
+        this.names = Arrays.copyOf(header, Math.max(1, header.length - 1));
+        boolean[][] labels = new boolean[names.length][N];
+        String[] messages = new String[N];
+        input = new Scanner(file);
+        input.nextLine(); // Skip header
+        for (int i = 0; i < N; i += 1) {
+            Scanner line = new Scanner(input.nextLine()).useDelimiter("\t");
+            for (int k = 0; k < names.length; k += 1) {
+                labels[k][i] = line.nextBoolean();
+            }
+            messages[i] = line.next();
+        }
+        if (!collapse) {
+            this.messages = messages;
+            this.columns = labels;
+            this.labels = labels[0];
+            this.weights = new double[N];
+            Arrays.fill(weights, 1.0);
+            return;
+        }
+
+        Map<String, Integer> rows = new HashMap<>();
+        List<Integer> first = new ArrayList<>();
+        List<Double> counts = new ArrayList<>();
+        for (int i = 0; i < N; i += 1) {
+            StringBuilder key = new StringBuilder();
+            for (boolean[] column : labels) {
+                key.append(column[i]).append('\t');
+            }
+            key.append(messages[i].trim().replaceAll("\\s+", " "));
+            Integer row = rows.putIfAbsent(key.toString(), first.size());
+            if (row == null) {
+                first.add(i);
+                counts.add(1.0);
+            } else {
+                counts.set(row, counts.get(row) + 1.0);
+            }
+        }
+        this.messages = new String[first.size()];
+        this.columns = new boolean[names.length][first.size()];
+        this.labels = columns[0];
+        this.weights = new double[first.size()];
+        for (int j = 0; j < first.size(); j += 1) {
+            this.messages[j] = messages[first.get(j)];
+            for (int k = 0; k < names.length; k += 1) {
+                columns[k][j] = labels[k][first.get(j)];
+            }
+            this.weights[j] = counts.get(j);
+        }
+    }
+
+    // Returns the label for each message from the label column with the given name.
+    public boolean[] labels(String name) {
+        for (int k = 0; k < names.length; k += 1) {
+            if (names[k].equals(name)) {
+                return columns[k];
+            }
+        }
+        throw new IllegalArgumentException("unknown label: " + name);
+    }
+
+    // Returns the number of rows in this dataset.
+    public int size() {
+        return messages.length;
+    }
+}
@@ -0,0 +1,87 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+public class DatasetTest {
+
+    // Returns a temporary tsv file with the given lines.
+    private static File tsv(String... lines) throws IOException {
+        File file = File.createTempFile("dataset", ".tsv");
+        file.deleteOnExit();
+        Files.write(file.toPath(), String.join("\n", lines).getBytes("UTF-8"));
+        return file;
+    }
+
+    @Test
+    @DisplayName("rows are read in file order with unit weights")
+    public void testRead() throws IOException {
+        Dataset data = new Dataset(tsv("label\tmessage", "true\tfree prize", "false\thi there",
+                                       "true\tfree prize"));
+        assertEquals(3, data.size());
+        assertArrayEquals(new String[]{"free prize", "hi there", "free prize"}, data.messages);
+        assertArrayEquals(new boolean[]{true, false, true}, data.labels);
+        assertArrayEquals(new double[]{1.0, 1.0, 1.0}, data.weights);
+        assertArrayEquals(new String[]{"label"}, data.names);
+    }
+
+    @Test
+    @DisplayName("collapsed copies keep the first position and count as weight")
+    public void testCollapse() throws IOException {
+        Dataset data = new Dataset(tsv("label\tmessage", "true\tfree  prize", "false\thi there",
+                                       "true\tfree prize ", "false\tfree prize"), true);
+        assertArrayEquals(new String[]{"free  prize", "hi there", "free prize"}, data.messages);
+        assertArrayEquals(new boolean[]{true, false, false}, data.labels);
+        assertArrayEquals(new double[]{2.0, 1.0, 1.0}, data.weights);
+    }
+
+    @Test
+    @DisplayName("every column but the last is a label")
+    public void testMultiLabel() throws IOException {
+        Dataset data = new Dataset(tsv("spam\tlong\tmessage", "true\tfalse\tfree prize",
+                                       "false\ttrue\thi there", "true\tfalse\tfree prize",
+                                       "true\ttrue\tfree prize"), true);
+        assertArrayEquals(new String[]{"spam", "long"}, data.names);
+        assertArrayEquals(new double[]{2.0, 1.0, 1.0}, data.weights);
+        assertArrayEquals(new boolean[]{true, false, true}, data.labels("spam"));
+        assertArrayEquals(new boolean[]{false, true, true}, data.labels("long"));
+        assertSame(data.labels("spam"), data.labels);
+        assertThrows(IllegalArgumentException.class, () -> data.labels("message"));
+    }
+
+    @Test
+    @DisplayName("training on collapsed rows grows the same tree as training on every row")
+    public void testCollapsedTree() throws IOException {
+        Dataset rows = new Dataset(new File("spam.tsv"));
+        Vectorizer vectorizer = new Vectorizer();
+        double[][] matrix = vectorizer.fitTransform(rows.messages);
+        TextClassifier expected = new TextClassifier(vectorizer,
+                                                     new GiniSplitter(matrix, rows.labels));
+
+        Dataset collapsed = new Dataset(new File("spam.tsv"), true);
+        assertTrue(collapsed.size() < rows.size());
+        Vectorizer weighted = new Vectorizer();
+        matrix = weighted.fitTransform(collapsed.messages, collapsed.weights);
+        TextClassifier actual = new TextClassifier(weighted, new GiniSplitter(
+            matrix, collapsed.labels, collapsed.weights
+        ));
+
+        assertEquals(print(expected), print(actual));
+        for (String message : rows.messages) {
+            assertEquals(expected.classify(message), actual.classify(message), message);
+        }
+    }
+
+    // Returns what the given classifier prints.
+    private static String print(TextClassifier clf) {
+        ByteArrayOutputStream b = new ByteArrayOutputStream();
+        PrintStream old = System.out;
+        System.setOut(new PrintStream(b));
+        clf.print();
+        System.out.flush();
+        System.setOut(old);
+        return b.toString();
+    }
+}
@@ -1,76 +1,372 @@
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.function.*;
 import java.util.stream.*;
 
 // Computes the best split for the given data based on Gini impurity and information gain.
 public class GiniSplitter implements Splitter {
     private double[][] matrix;
+    private OffHeapMatrix store;
+    private int[] rows;
+    private int features;
     private boolean[] labels;
-    private int originalSize;
+    private double[] weights;
+    private boolean unweighted;
+    private double weight;
+    private double originalWeight;
+    private Parameters parameters;
     private double impurity;
     private boolean label;
+    private Scratch scratch;
 
-    // The minimum impurity improvement required to continue splitting.
-    private static final double MIN_IMPURITY_DECREASE = 0.001;
-    // The minimum number of data points required to continue splitting.
-    private static final int MIN_SIZE_SPLIT = 5;
+    // The default minimum impurity improvement required to continue splitting.
+    public static final double MIN_IMPURITY_DECREASE = 0.001;
+    // The default minimum total weight of data points required to continue splitting.
+    public static final int MIN_SIZE_SPLIT = 5;
+    // The default number of candidate thresholds from the quantile sketch for large splitters.
+    private static final int DEFAULT_CANDIDATES = 256;
+    // Counts data points for the exact split search of unweighted splitters.
+    private static final Counter COUNTER = counter();
+
+    // Counts data points with a true label and a feature value no greater than a threshold. Only
+    // the first labels.length values of the column belong to data points.
+    interface Counter {
+        int count(double[] column, boolean[] labels, double threshold);
+    }
+
+    // Returns a VectorCounter that uses SIMD instructions if the jdk.incubator.vector module and
+    // the hardware support it and the gini.simd property is not false, or a scalar Counter
+    // otherwise. Incubator modules are only used for optional speedups like this one, which are
+    // loaded reflectively and have a portable fallback, so the program runs on a stock JDK 17
+    // without --add-modules.
+    private static Counter counter() {
+        if (!"false".equals(System.getProperty("gini.simd"))
+                && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                Class<?> vector = Class.forName("VectorCounter");
+                if ((Boolean) vector.getMethod("supported").invoke(null)) {
+                    return (Counter) vector.getDeclaredConstructor().newInstance();
+                }
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // Fall back to scalar code if the class was not compiled.
+            }
+        }
+        return new Counter() {
+            public int count(double[] column, boolean[] labels, double threshold) {
+                int count = 0;
+                for (int i = 0; i < labels.length; i += 1) {
+                    if (labels[i] && column[i] <= threshold) {
+                        count += 1;
+                    }
+                }
+                return count;
+            }
+
+            public String toString() {
+                return "scalar";
+            }
+        };
+    }
+
+    // Returns a description of the code used to count data points, such as "scalar".
+    static String counterName() {
+        return COUNTER.toString();
+    }
 
     // Constructs a new GiniSplitter with the given design matrix and labels.
     public GiniSplitter(double[][] matrix, boolean[] labels) {
         this(matrix, labels, matrix.length);
     }
 
-    // Constructs a new GiniSplitter with the given design matrix, labels, and original size.
-    private GiniSplitter(double[][] matrix, boolean[] labels, int originalSize) {
+    // Constructs a new GiniSplitter with the given design matrix, labels, and sample weights. A
+    // data point with weight w affects impurity, information gain, and majority labels as if it
+    // appeared w times, so collapsing duplicate data points into one weighted data point grows the
+    // same tree.
+    public GiniSplitter(double[][] matrix, boolean[] labels, double[] weights) {
+        this(matrix, labels, weights, new Parameters());
+    }
+
+    // Constructs a new GiniSplitter with the given design matrix and labels that approximates the
+    // split search for splitters with more than the given number of data points. Each feature's
+    // candidate thresholds come from a quantile sketch instead of every distinct value, trading
+    // some accuracy for speed as the number of candidates decreases.
+    public GiniSplitter(double[][] matrix, boolean[] labels, int minSizeSketch, int candidates) {
+        this(matrix, labels, ones(labels.length), new Parameters(
+            MIN_IMPURITY_DECREASE, MIN_SIZE_SPLIT, minSizeSketch, candidates
+        ));
+    }
+
+    // Constructs a new GiniSplitter with the given design matrix and labels that chooses each split
+    // for splitters with more than the given number of data points from a random sample of that
+    // many data points. The whole splitter is still divided by the chosen split and every majority
+    // label is computed from all of the data points. The randomness makes samples repeatable.
+    public GiniSplitter(double[][] matrix, boolean[] labels, int sampleSize, Random random) {
+        this(matrix, labels, ones(labels.length), new Parameters(
+            MIN_IMPURITY_DECREASE, MIN_SIZE_SPLIT, Integer.MAX_VALUE, DEFAULT_CANDIDATES,
+            sampleSize, random
+        ));
+    }
+
+    // Constructs a new GiniSplitter with the given design matrix, labels, sample weights, and
+    // parameters.
+    public GiniSplitter(double[][] matrix, boolean[] labels, double[] weights,
+                        Parameters parameters) {
+        this(matrix, labels, weights, parameters, sum(weights));
+    }
+
+    // Constructs a new GiniSplitter with the given design matrix, labels, and original size. The
+    // original size is the number of data points in the root of this splitter's tree.
+    GiniSplitter(double[][] matrix, boolean[] labels, int originalSize) {
+        this(matrix, labels, ones(labels.length), new Parameters(), originalSize);
+    }
+
+    // Constructs a new GiniSplitter with the given design matrix, labels, weights, parameters, and
+    // total weight of the root of the tree.
+    private GiniSplitter(double[][] matrix, boolean[] labels, double[] weights,
+                         Parameters parameters, double originalWeight) {
         if (matrix.length != labels.length) {
             throw new IllegalArgumentException("matrix length != labels length");
         }
         this.matrix = matrix;
+        this.features = matrix.length == 0 ? 0 : matrix[0].length;
+        initialize(labels, weights, parameters, originalWeight);
+    }
+
+    // Constructs a new GiniSplitter with the given off-heap design matrix and labels. The split
+    // search reads the matrix directly, so the training data stays off the heap.
+    public GiniSplitter(OffHeapMatrix store, boolean[] labels) {
+        this(store, labels, ones(labels.length), new Parameters());
+    }
+
+    // Constructs a new GiniSplitter with the given off-heap design matrix, labels, sample weights,
+    // and parameters.
+    public GiniSplitter(OffHeapMatrix store, boolean[] labels, double[] weights,
+                        Parameters parameters) {
+        this(store, IntStream.range(0, store.rows()).toArray(), labels, weights, parameters,
+             sum(weights));
+        if (store.rows() != labels.length) {
+            throw new IllegalArgumentException("matrix rows != labels length");
+        }
+    }
+
+    // Constructs a new GiniSplitter with the given rows of the off-heap design matrix, labels and
+    // weights for each row, parameters, and total weight of the root of the tree.
+    private GiniSplitter(OffHeapMatrix store, int[] rows, boolean[] labels, double[] weights,
+                         Parameters parameters, double originalWeight) {
+        this.store = store;
+        this.rows = rows;
+        this.features = store.columns();
+        initialize(labels, weights, parameters, originalWeight);
+    }
+
+    // Returns an array of the given length filled with weight 1.
+    private static double[] ones(int length) {
+        double[] result = new double[length];
+        Arrays.fill(result, 1.0);
+        return result;
+    }
+
+    // Returns the sum of the given weights.
+    private static double sum(double[] weights) {
+        double result = 0.0;
+        for (double weight : weights) {
+            result += weight;
+        }
+        return result;
+    }
+
+    // Columns of feature values shared by every GiniSplitter in a tree, one for each parallel task
+    // of the split search, so that the search does not allocate a column per feature. A tree
+    // searches one split at a time, and the columns are released along with the tree.
+    private static class Scratch {
+        private final double[][] columns;
+
+        // Constructs a new Scratch with one column for each thread of the common pool.
+        public Scratch() {
+            this.columns = new double[Math.max(1, ForkJoinPool.getCommonPoolParallelism())][];
+        }
+
+        // Returns the number of parallel tasks that can each have a column.
+        public int tasks() {
+            return columns.length;
+        }
+
+        // Returns the column of the given task, allocating it if it cannot hold the given number of
+        // values. The root of a tree is searched first, so columns are rarely allocated again.
+        public double[] column(int task, int size) {
+            if (columns[task] == null || columns[task].length < size) {
+                columns[task] = new double[size];
+            }
+            return columns[task];
+        }
+    }
+
+    // Hyperparameters shared by every GiniSplitter in a tree.
+    public static class Parameters {
+        // The minimum impurity improvement required to continue splitting.
+        public final double minImpurityDecrease;
+        // The minimum total weight of data points required to continue splitting.
+        public final int minSizeSplit;
+        // Splitters with more data points than this use a quantile sketch for candidate thresholds.
+        public final int minSizeSketch;
+        // The number of candidate thresholds to take from the quantile sketch.
+        public final int candidates;
+        // Splitters with more data points than this choose splits from a sample of this many.
+        public final int sampleSize;
+        // Randomness for choosing samples, or null if splitters never sample.
+        public final Random random;
+
+        // Constructs a new Parameters with the default values and exact split search.
+        public Parameters() {
+            this(MIN_IMPURITY_DECREASE, MIN_SIZE_SPLIT);
+        }
+
+        // Constructs a new Parameters with the given stopping criteria and exact split search.
+        public Parameters(double minImpurityDecrease, int minSizeSplit) {
+            this(minImpurityDecrease, minSizeSplit, Integer.MAX_VALUE, DEFAULT_CANDIDATES);
+        }
+
+        // Constructs a new Parameters with the given stopping criteria and sketch settings.
+        public Parameters(double minImpurityDecrease, int minSizeSplit, int minSizeSketch,
+                          int candidates) {
+            this(minImpurityDecrease, minSizeSplit, minSizeSketch, candidates, Integer.MAX_VALUE,
+                 null);
+        }
+
+        // Constructs a new Parameters with the given stopping criteria, quantile sketch settings,
+        // and sample size and randomness for choosing splits from a sample of the data points.
+        public Parameters(double minImpurityDecrease, int minSizeSplit, int minSizeSketch,
+                          int candidates, int sampleSize, Random random) {
+            if (minImpurityDecrease < 0 || minSizeSplit < 0 || candidates < 1 || sampleSize < 1
+                    || (sampleSize < Integer.MAX_VALUE && random == null)) {
+                throw new IllegalArgumentException("invalid splitter parameters");
+            }
+            this.minImpurityDecrease = minImpurityDecrease;
+            this.minSizeSplit = minSizeSplit;
+            this.minSizeSketch = minSizeSketch;
+            this.candidates = candidates;
+            this.sampleSize = sampleSize;
+            this.random = random;
+        }
+    }
+
+    // Initializes the labels, weights, parameters, and original weight, and computes the impurity
+    // and majority label for this splitter.
+    private void initialize(boolean[] labels, double[] weights, Parameters parameters,
+                            double originalWeight) {
+        if (labels.length != weights.length) {
+            throw new IllegalArgumentException("labels length != weights length");
+        }
         this.labels = labels;
-        this.originalSize = originalSize;
-        int countTrue = 0;
-        for (boolean label : labels) {
-            if (label) {
-                countTrue += 1;
+        this.weights = weights;
+        this.parameters = parameters;
+        this.originalWeight = originalWeight;
+        this.scratch = new Scratch();
+        this.weight = 0.0;
+        this.unweighted = true;
+        double weightTrue = 0.0;
+        for (int i = 0; i < labels.length; i += 1) {
+            weight += weights[i];
+            unweighted &= weights[i] == 1.0;
+            if (labels[i]) {
+                weightTrue += weights[i];
             }
         }
-        this.impurity = impurity(countTrue);
-        this.label = countTrue > size() / 2;
+        this.impurity = impurity(weightTrue);
+        this.label = weightTrue > weight / 2;
     }
 
     // Returns the optimal Splitter.Result representing the split with the maximum information gain
     // or null if no valid split exists.
     public Splitter.Result split() {
-        if (size() < MIN_SIZE_SPLIT) {
+        Split max = best();
+        if (max == null) {
+            return null;
+        }
+        double[] column = column(max.index, scratch.column(0, size()));
+        IntPredicate left = i -> column[i] <= max.threshold;
+        IntPredicate right = left.negate();
+        return new Splitter.Result(max.index, max.threshold, mask(left), mask(right));
+    }
+
+    // Returns the split with the maximum information gain that meets the stopping criteria, or null
+    // if no valid split exists. Unlike split, the data points are not divided. Features are
+    // searched in parallel tasks that each reuse one scratch column, and ties go to the lowest
+    // feature index.
+    Split best() {
+        if (weight < parameters.minSizeSplit) {
             return null;
         }
-        double subsample = size() / (double) originalSize;
-        Split max = (
-            IntStream.range(0, matrix[0].length)
+        GiniSplitter search = size() > parameters.sampleSize ? mask(sample()) : this;
+        int tasks = Math.min(features, scratch.tasks());
+        return (
+            IntStream.range(0, tasks)
                      .parallel()
-                     .mapToObj(this::split)
-                     .max(Comparator.comparingDouble(s -> s.gain))
-                     .filter(s -> subsample * s.gain >= MIN_IMPURITY_DECREASE)
+                     .mapToObj(task -> {
+                         double[] column = scratch.column(task, search.size());
+                         Split max = null;
+                         for (int index = task; index < features; index += tasks) {
+                             Split split = search.split(index, column);
+                             if (max == null || split.gain > max.gain) {
+                                 max = split;
+                             }
+                         }
+                         return max;
+                     })
+                     .max(Comparator.comparingDouble((Split s) -> s.gain)
+                                    .thenComparingInt(s -> -s.index))
+                     .filter(this::valid)
                      .orElse(null)
         );
-        if (max == null) {
+    }
+
+    // Returns the split with the maximum information gain for the given index (feature) if it meets
+    // the stopping criteria, or null otherwise.
+    Split best(int index) {
+        if (weight < parameters.minSizeSplit) {
             return null;
         }
-        IntPredicate left = i -> matrix[i][max.index] <= max.threshold;
-        IntPredicate right = left.negate();
-        return new Splitter.Result(max.index, max.threshold, mask(left), mask(right));
+        GiniSplitter search = size() > parameters.sampleSize ? mask(sample()) : this;
+        Split split = search.split(index, scratch.column(0, search.size()));
+        return split.gain > 0.0 && valid(split) ? split : null;
     }
 
-    // Returns the split with the maximum information gain for the given index (feature).
-    private Split split(int index) {
+    // Returns true if the given split improves impurity enough to continue splitting. The gain is
+    // weighted by the share of the whole tree's data points that this splitter holds.
+    private boolean valid(Split split) {
+        return weight / originalWeight * split.gain >= parameters.minImpurityDecrease;
+    }
+
+    // Returns the indices of a random sample of parameters.sampleSize data points in ascending
+    // order, chosen without replacement by a partial Fisher-Yates shuffle.
+    private int[] sample() {
+        int[] indices = IntStream.range(0, size()).toArray();
+        for (int i = 0; i < parameters.sampleSize; i += 1) {
+            int j = i + parameters.random.nextInt(indices.length - i);
+            int temp = indices[i];
+            indices[i] = indices[j];
+            indices[j] = temp;
+        }
+        int[] result = Arrays.copyOf(indices, parameters.sampleSize);
+        Arrays.sort(result);
+        return result;
+    }
+
+    // Returns the split with the maximum information gain for the given index (feature), using the
+    // given array to hold its values.
+    private Split split(int index, double[] column) {
+        column(index, column);
+        if (size() > parameters.minSizeSketch) {
+            return sketchSplit(index, column);
+        }
         SortedSet<Double> thresholds = new TreeSet<>();
         for (int i = 0; i < size(); i += 1) {
-            thresholds.add(matrix[i][index]);
+            thresholds.add(column[i]);
         }
         double bestThreshold = Double.NaN;
         double bestGain = 0.0;
         for (double threshold : thresholds) {
-            double gain = informationGain(index, threshold);
+            double gain = informationGain(column, threshold);
             if (gain > bestGain) {
                 bestThreshold = threshold;
                 bestGain = gain;
@@ -79,8 +375,41 @@ public class GiniSplitter implements Splitter {
         return new Split(index, bestThreshold, bestGain);
     }
 
+    // Returns the split with the maximum information gain for the given index (feature) among the
+    // candidate thresholds from a quantile sketch of the given feature values. Each data point
+    // enters the sketch as many times as its weight, rounded to a whole number no less than 1, so
+    // collapsed duplicates get the same candidates as every copy would. Rather than scanning the
+    // values once per candidate, each data point is counted once in the bucket of the smallest
+    // candidate threshold that it does not exceed.
+    private Split sketchSplit(int index, double[] column) {
+        QuantileSketch sketch = new QuantileSketch(2 * parameters.candidates);
+        for (int i = 0; i < size(); i += 1) {
+            sketch.add(column[i], Math.max(1, Math.round(weights[i])));
+        }
+        double[] thresholds = sketch.quantiles(parameters.candidates);
+        double[] counts = new double[thresholds.length + 1];
+        for (int i = 0; i < size(); i += 1) {
+            if (labels[i]) {
+                int bucket = Arrays.binarySearch(thresholds, column[i]);
+                counts[bucket >= 0 ? bucket : -(bucket + 1)] += weights[i];
+            }
+        }
+        double bestThreshold = Double.NaN;
+        double bestGain = 0.0;
+        double correct = 0.0;
+        for (int t = 0; t < thresholds.length; t += 1) {
+            correct += counts[t];
+            double gain = informationGain(correct);
+            if (gain > bestGain) {
+                bestThreshold = thresholds[t];
+                bestGain = gain;
+            }
+        }
+        return new Split(index, bestThreshold, bestGain);
+    }
+
     // Immutable container representing a possible split.
-    private static class Split {
+    static class Split {
         public final int index;
         public final double threshold;
         public final double gain;
@@ -93,38 +422,83 @@ public class GiniSplitter implements Splitter {
         }
     }
 
-    // Returns the Gini impurity given the count of either class in binary classification.
-    private double impurity(int count) {
-        if (count == 0 || count == size()) {
+    // Returns the Gini impurity given the weight of either class in binary classification.
+    private double impurity(double count) {
+        if (count == 0 || count == weight) {
             return 0.0;
         }
-        double p = count / (double) size();
+        double p = count / weight;
         return 1 - ((p * p) + ((1 - p) * (1 - p)));
     }
 
-    // Returns the information gain for applying a split with the given index and threshold.
-    private double informationGain(int index, double threshold) {
-        int correct = 0;
+    // Copies the values of the given index (feature) for each data point in this splitter into the
+    // start of the given array and returns the array.
+    private double[] column(int index, double[] column) {
+        if (store != null) {
+            store.column(index, rows, column);
+        } else {
+            for (int i = 0; i < size(); i += 1) {
+                column[i] = matrix[i][index];
+            }
+        }
+        return column;
+    }
+
+    // Returns the information gain for applying a split with the given threshold to the given
+    // feature values. Without weights, the weight of correct data points is just their count.
+    private double informationGain(double[] column, double threshold) {
+        if (unweighted) {
+            return informationGain((double) COUNTER.count(column, labels, threshold));
+        }
+        double correct = 0.0;
         for (int i = 0; i < size(); i += 1) {
-            if (labels[i] && matrix[i][index] <= threshold) {
-                correct += 1;
+            if (labels[i] && column[i] <= threshold) {
+                correct += weights[i];
             }
         }
-        int incorrect = size() - correct;
+        return informationGain(correct);
+    }
+
+    // Returns the information gain for a split where the given weight of data points is correct.
+    private double informationGain(double correct) {
+        double incorrect = weight - correct;
         double weightedSplit = correct * impurity(correct) + incorrect * impurity(incorrect);
-        return this.impurity - weightedSplit / size();
+        return this.impurity - weightedSplit / weight;
     }
 
     // Returns a new GiniSplitter containing only data where indices are true for the given predicate.
     private GiniSplitter mask(IntPredicate predicate) {
-        int[] indices = IntStream.range(0, size()).filter(predicate).toArray();
-        double[][] newMatrix = new double[indices.length][];
+        return mask(IntStream.range(0, size()).filter(predicate).toArray());
+    }
+
+    // Returns a new GiniSplitter containing only data at the given indices.
+    private GiniSplitter mask(int[] indices) {
         boolean[] newLabels = new boolean[indices.length];
+        double[] newWeights = new double[indices.length];
         for (int i = 0; i < indices.length; i += 1) {
-            newMatrix[i] = matrix[indices[i]];
             newLabels[i] = labels[indices[i]];
+            newWeights[i] = weights[indices[i]];
         }
-        return new GiniSplitter(newMatrix, newLabels, originalSize);
+        if (store != null) {
+            int[] newRows = new int[indices.length];
+            for (int i = 0; i < indices.length; i += 1) {
+                newRows[i] = rows[indices[i]];
+            }
+            return share(new GiniSplitter(store, newRows, newLabels, newWeights, parameters,
+                                          originalWeight));
+        }
+        double[][] newMatrix = new double[indices.length][];
+        for (int i = 0; i < indices.length; i += 1) {
+            newMatrix[i] = matrix[indices[i]];
+        }
+        return share(new GiniSplitter(newMatrix, newLabels, newWeights, parameters,
+                                      originalWeight));
+    }
+
+    // Returns the given splitter after making it use this splitter's scratch columns.
+    private GiniSplitter share(GiniSplitter splitter) {
+        splitter.scratch = scratch;
+        return splitter;
     }
 
     // Returns the majority label for this splitter.
@@ -134,6 +508,11 @@ public class GiniSplitter implements Splitter {
 
     // Returns the number of data points in this splitter.
     public int size() {
-        return matrix.length;
+        return labels.length;
+    }
+
+    // Returns the total weight of data points in this splitter.
+    public double weight() {
+        return weight;
     }
 }
@@ -0,0 +1,172 @@
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+// Sends every message in a tsv file to a running Server and reports throughput and latency, either
+// one message per /query request over HTTP or in batches over the binary protocol of BinaryListener
+// with the given number of frames in flight on one connection. The number of messages predicted
+// true is printed so that both protocols can be checked for agreement.
+public class LoadGenerator {
+    // Number of times to send every message after sending them once to warm up.
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 3) {
+            throw new IllegalArgumentException(
+                "java LoadGenerator [tsv file] http [port] or "
+                + "java LoadGenerator [tsv file] binary [port] [batch size] [frames in flight]"
+            );
+        }
+        String[] messages = new Dataset(new File(args[0])).messages;
+        int N = messages.length;
+
+        int port = Integer.parseInt(args[2]);
+        int batch = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+        int inFlight = args.length > 4 ? Integer.parseInt(args[4]) : 1;
+        for (int round = 0; round <= ROUNDS; round += 1) {
+            long[] latencies;
+            // The number of messages predicted true and the number that the server rejected.
+            int[] positives = new int[1];
+            int[] rejected = new int[1];
+            long start = System.nanoTime();
+            if (args[1].equals("http")) {
+                latencies = http(port, messages, positives, rejected);
+            } else if (args[1].equals("binary")) {
+                latencies = binary(port, messages, batch, inFlight, positives, rejected);
+            } else {
+                throw new IllegalArgumentException("unknown protocol: " + args[1]);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            Arrays.sort(latencies);
+            System.out.printf("%s %s: %d messages in %.2f s, %.0f messages/s, %d true, "
+                              + "%d rejected, p50 %.2f ms, p99 %.2f ms%n",
+                              round == 0 ? "warmup" : "round " + round, args[1], N, seconds,
+                              N / seconds, positives[0], rejected[0],
+                              latencies[latencies.length / 2] / 1e6,
+                              latencies[latencies.length * 99 / 100] / 1e6);
+        }
+        if (args[1].equals("http")) {
+            // Report the server's counters, such as the stem cache hit rate, for the same load.
+            try (InputStream body = new URL("http://localhost:" + port + "/stats").openStream()) {
+                System.out.println(new String(body.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    // Sends each of the given messages in its own /query request and returns the latencies.
+    private static long[] http(int port, String[] messages, int[] positives, int[] rejected)
+            throws IOException {
+        long[] latencies = new long[messages.length];
+        for (int i = 0; i < messages.length; i += 1) {
+            // The server splits the decoded query on & and =, so those cannot appear in messages.
+            String s = URLEncoder.encode(messages[i].replaceAll("[&=]", " "), "UTF-8")
+                                 .replace("+", "%20");
+            long start = System.nanoTime();
+            HttpURLConnection connection = (HttpURLConnection) new URL(
+                "http://localhost:" + port + "/query?s=" + s
+            ).openConnection();
+            if (connection.getResponseCode() != 200) {
+                rejected[0] += 1;
+                InputStream error = connection.getErrorStream();
+                if (error != null) {
+                    error.close();
+                }
+                latencies[i] = System.nanoTime() - start;
+                continue;
+            }
+            try (InputStream body = connection.getInputStream()) {
+                if (new String(body.readAllBytes(), StandardCharsets.UTF_8).equals("true")) {
+                    positives[0] += 1;
+                }
+            }
+            latencies[i] = System.nanoTime() - start;
+        }
+        return latencies;
+    }
+
+    // Sends the given messages in frames of the given batch size over one connection, keeping up to
+    // the given number of frames in flight, and returns the latency of each frame.
+    private static long[] binary(int port, String[] messages, int batch, int inFlight,
+                                 int[] positives, int[] rejected)
+            throws IOException, InterruptedException {
+        int frames = (messages.length + batch - 1) / batch;
+        long[] latencies = new long[frames];
+        AtomicLongArray sent = new AtomicLongArray(frames);
+        Semaphore window = new Semaphore(inFlight);
+        try (SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", port))) {
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Thread writer = new Thread(() -> {
+                ByteBuffer out = ByteBuffer.allocate(1 << 16);
+                try {
+                    for (int f = 0; f < frames; f += 1) {
+                        out.clear().putInt(0).put((byte) 0);
+                        int from = f * batch;
+                        int to = Math.min(messages.length, from + batch);
+                        out.putInt(to - from);
+                        for (int i = from; i < to; i += 1) {
+                            byte[] text = messages[i].getBytes(StandardCharsets.UTF_8);
+                            if (out.remaining() < Integer.BYTES + text.length) {
+                                out = ByteBuffer.allocate(2 * out.capacity() + text.length)
+                                                .put(out.flip());
+                            }
+                            out.putInt(text.length).put(text);
+                        }
+                        out.putInt(0, out.position() - Integer.BYTES).flip();
+                        window.acquire();
+                        sent.set(f, System.nanoTime());
+                        while (out.hasRemaining()) {
+                            channel.write(out);
+                        }
+                    }
+                } catch (IOException | InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            writer.start();
+
+            ByteBuffer in = ByteBuffer.allocate(1 << 16);
+            for (int f = 0; f < frames; f += 1) {
+                in.clear();
+                read(channel, in, Integer.BYTES);
+                int length = in.getInt(0);
+                read(channel, in, Integer.BYTES + length);
+                latencies[f] = System.nanoTime() - sent.get(f);
+                window.release();
+                int count = in.getInt(Integer.BYTES);
+                if (count == -1) {
+                    throw new IllegalStateException("server does not have the default model");
+                } else if (count < 0) {
+                    // Shed by admission control or the model is loading.
+                    rejected[0] += Math.min(batch, messages.length - f * batch);
+                    continue;
+                }
+                for (int i = 0; i < count; i += 1) {
+                    if ((in.get(2 * Integer.BYTES + i / 8) & (1 << (i % 8))) != 0) {
+                        positives[0] += 1;
+                    }
+                }
+            }
+            writer.join();
+        }
+        return latencies;
+    }
+
+    // Reads from the given channel until the given buffer holds exactly the given number of bytes.
+    // Responses are read one at a time, so the buffer never holds part of the next response.
+    private static void read(SocketChannel channel, ByteBuffer in, int bytes) throws IOException {
+        if (bytes > in.capacity()) {
+            throw new IllegalStateException("response larger than " + in.capacity() + " bytes");
+        }
+        in.limit(bytes);
+        while (in.hasRemaining()) {
+            if (channel.read(in) < 0) {
+                throw new EOFException("server closed the connection");
+            }
+        }
+    }
+}
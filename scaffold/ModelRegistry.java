@@ -0,0 +1,335 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+// Named text classification models trained from tsv files and kept within a memory budget. Models
+// are trained in the background when first used, and the least recently used models are unloaded
+// when the loaded models exceed the budget, to be trained again the next time they are used.
+// Queries never wait for training: a model that is not loaded yet throws LoadingException. All
+// models share the text processing pipeline, so a text is processed once for all models.
+public class ModelRegistry {
+    // The registered models in registration order. The map is never modified once published, so
+    // queries look models up without taking a lock, and register() publishes a modified copy.
+    private final AtomicReference<Map<String, Entry>> entries;
+    private final long budget;
+    private final String matrix;
+    private final boolean collapse;
+    private final ExecutorService trainer;
+    private final LongAdder loads;
+    private final LongAdder evictions;
+
+    // Approximate bytes of heap used by each TextClassifier node.
+    private static final long NODE_BYTES = 40;
+
+    // Thrown when a model is being trained and cannot answer yet.
+    public static class LoadingException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        // The number of seconds after which the model is expected to be loaded.
+        public final long retryAfter;
+
+        // Constructs a new LoadingException for the model with the given name, expected to be
+        // loaded after the given number of seconds.
+        public LoadingException(String name, long retryAfter) {
+            super("model is loading: " + name);
+            this.retryAfter = retryAfter;
+        }
+    }
+
+    // A trained model: a TextClassifier over the features of a compacted vectorizer.
+    public static class Model {
+        private final Vectorizer vectorizer;
+        private final TextClassifier classifier;
+        private final long bytes;
+
+        // Constructs a new Model with the given vectorizer and the decision tree recorded by the
+        // given splitter.
+        public Model(Vectorizer vectorizer, RecordingSplitter tree) {
+            this.vectorizer = vectorizer;
+            this.classifier = new TextClassifier(vectorizer, tree);
+            this.bytes = NODE_BYTES * nodes(tree) + vectorizer.bytes();
+        }
+
+        // Returns the predicted label for the given text.
+        public boolean classify(String text) {
+            return classify(Vectorizer.BagOfWords.from(text));
+        }
+
+        // Returns the predicted label for the given processed text.
+        public boolean classify(Vectorizer.BagOfWords document) {
+            return classifier.classify(vectorizer.transform(document));
+        }
+
+        // Returns the approximate number of bytes of heap used by this model.
+        public long bytes() {
+            return bytes;
+        }
+
+        // Returns the number of nodes in the given tree.
+        private static long nodes(RecordingSplitter tree) {
+            Splitter.Result split = tree.split();
+            if (split == null) {
+                return 1;
+            }
+            return 1 + nodes((RecordingSplitter) split.left)
+                     + nodes((RecordingSplitter) split.right);
+        }
+    }
+
+    // A registered model and the file that it is trained from.
+    private static class Entry {
+        public final File file;
+        // The loaded model, or null if it is not loaded.
+        public final AtomicReference<Model> model;
+        // True while a replacement model is being trained in the background.
+        public final AtomicBoolean reloading;
+        // True if another reload was requested while one was in progress.
+        public final AtomicBoolean pending;
+        // The last time the model was used, in System.nanoTime units.
+        public volatile long lastUsed;
+        // The training of the model when first used or after eviction, or null if never started.
+        public Future<Model> loading;
+        // The number of seconds that the model took to train the last time, or 1 if never trained.
+        public volatile long trainSeconds;
+
+        public Entry(File file) {
+            this.file = file;
+            this.model = new AtomicReference<>();
+            this.reloading = new AtomicBoolean();
+            this.pending = new AtomicBoolean();
+            this.lastUsed = System.nanoTime();
+            this.loading = null;
+            this.trainSeconds = 1;
+        }
+    }
+
+    // Constructs a new empty ModelRegistry that keeps loaded models within the given number of
+    // bytes. The most recently used model is always kept, even if it alone exceeds the budget.
+    public ModelRegistry(long budget) {
+        this(budget, "heap", false);
+    }
+
+    // Constructs a new empty ModelRegistry that keeps loaded models within the given number of
+    // bytes and trains with the design matrix kept in the given place: "heap", "direct" for direct
+    // memory, or "mapped" for a temporary memory-mapped file, which lets a model train on more data
+    // than fits in the heap. If collapse is true, duplicate rows are trained on once with their
+    // count as weight, which grows the same tree from a smaller matrix.
+    public ModelRegistry(long budget, String matrix, boolean collapse) {
+        if (budget < 0) {
+            throw new IllegalArgumentException("budget must be non-negative");
+        }
+        if (!matrix.equals("heap") && !matrix.equals("direct") && !matrix.equals("mapped")) {
+            throw new IllegalArgumentException("matrix must be heap, direct, or mapped");
+        }
+        this.entries = new AtomicReference<>(Collections.emptyMap());
+        this.budget = budget;
+        this.matrix = matrix;
+        this.collapse = collapse;
+        this.trainer = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "trainer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.loads = new LongAdder();
+        this.evictions = new LongAdder();
+    }
+
+    // Registers a model with the given name to be trained from the given tsv file when first used.
+    public synchronized void register(String name, File file) {
+        Map<String, Entry> copy = new LinkedHashMap<>(entries.get());
+        if (copy.containsKey(name)) {
+            throw new IllegalArgumentException("duplicate model: " + name);
+        }
+        copy.put(name, new Entry(file));
+        entries.set(Collections.unmodifiableMap(copy));
+    }
+
+    // Returns the names of the registered models in registration order.
+    public List<String> names() {
+        return new ArrayList<>(entries.get().keySet());
+    }
+
+    // Returns the file that the model with the given name is trained from.
+    public File file(String name) {
+        return entry(name).file;
+    }
+
+    // Returns the entry for the given name.
+    private Entry entry(String name) {
+        Entry entry = entries.get().get(name);
+        if (entry == null) {
+            throw new NoSuchElementException("unknown model: " + name);
+        }
+        return entry;
+    }
+
+    // Returns the model with the given name. If it is not loaded, starts training it in the
+    // background and throws LoadingException rather than waiting.
+    public Model get(String name) throws IOException {
+        Entry entry = entry(name);
+        entry.lastUsed = System.nanoTime();
+        Model model = entry.model.get();
+        if (model != null) {
+            return model;
+        }
+        load(entry);
+        throw new LoadingException(name, entry.trainSeconds);
+    }
+
+    // Returns the model with the given name, waiting for it to be trained if it is not loaded.
+    public Model load(String name) throws IOException {
+        Entry entry = entry(name);
+        entry.lastUsed = System.nanoTime();
+        Model model = entry.model.get();
+        if (model != null) {
+            return model;
+        }
+        try {
+            return load(entry).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while loading " + name);
+        }
+    }
+
+    // Returns the training of the model for the given entry, starting it on the trainer thread if
+    // it is not already running. Loaded models keep serving while others train.
+    private Future<Model> load(Entry entry) {
+        synchronized (entry) {
+            if (entry.loading == null || entry.loading.isDone()) {
+                entry.loading = trainer.submit(() -> {
+                    Model model = entry.model.get();
+                    if (model == null) {
+                        long start = System.nanoTime();
+                        try {
+                            model = train(entry.file);
+                        } catch (IOException | RuntimeException e) {
+                            System.err.println("Load failed: " + e);
+                            throw e;
+                        }
+                        long nanos = System.nanoTime() - start;
+                        entry.trainSeconds = Math.max(1, (nanos + 999_999_999) / 1_000_000_000);
+                        entry.model.set(model);
+                        loads.increment();
+                        evict(entry);
+                    }
+                    return model;
+                });
+            }
+            return entry.loading;
+        }
+    }
+
+    // Unloads the least recently used models other than the given entry until the loaded models fit
+    // within the budget.
+    private synchronized void evict(Entry keep) {
+        long total = 0;
+        for (Entry entry : entries.get().values()) {
+            Model model = entry.model.get();
+            if (model != null) {
+                total += model.bytes();
+            }
+        }
+        while (total > budget) {
+            Entry oldest = null;
+            for (Entry entry : entries.get().values()) {
+                if (entry != keep && entry.model.get() != null
+                        && (oldest == null || entry.lastUsed < oldest.lastUsed)) {
+                    oldest = entry;
+                }
+            }
+            if (oldest == null) {
+                return;
+            }
+            Model model = oldest.model.getAndSet(null);
+            if (model != null) {
+                total -= model.bytes();
+                evictions.increment();
+            }
+        }
+    }
+
+    // Trains a replacement for the model with the given name in the background and swaps it in once
+    // it is fully built. Returns false if a reload is already in progress, in which case it
+    // retrains again after finishing so that the latest version of the file is always picked up. A
+    // model that is not loaded is not trained, as it is trained from the latest file when used.
+    public boolean reload(String name) {
+        Entry entry = entry(name);
+        entry.pending.set(true);
+        if (!entry.reloading.compareAndSet(false, true)) {
+            return false;
+        }
+        trainer.execute(() -> {
+            do {
+                while (entry.pending.getAndSet(false)) {
+                    if (entry.model.get() == null) {
+                        continue;
+                    }
+                    try {
+                        long start = System.nanoTime();
+                        Model model = train(entry.file);
+                        // Do not resurrect a model that was evicted while it was being retrained.
+                        if (entry.model.getAndUpdate(m -> m == null ? null : model) != null) {
+                            evict(entry);
+                        }
+                        System.err.printf("Reloaded %s in %.1f s%n", entry.file,
+                                          (System.nanoTime() - start) / 1e9);
+                    } catch (IOException | RuntimeException e) {
+                        System.err.println("Reload failed, keeping current model: " + e);
+                    }
+                }
+                entry.reloading.set(false);
+            } while (entry.pending.get() && entry.reloading.compareAndSet(false, true));
+        });
+        return true;
+    }
+
+    // Returns a new Model trained on the given tsv file. An off-heap design matrix is closed, and a
+    // mapped file deleted, as soon as the tree is grown.
+    private Model train(File file) throws IOException {
+        Dataset data = new Dataset(file, collapse);
+        Vectorizer vectorizer = new Vectorizer();
+        TokenCorpus corpus = TokenCorpus.load(data.messages);
+        RecordingSplitter tree;
+        if (matrix.equals("heap")) {
+            double[][] values = vectorizer.fitTransform(corpus, data.weights);
+            tree = new RecordingSplitter(
+                new GiniSplitter(values, data.labels, data.weights)
+            ).grow();
+        } else {
+            Path path = matrix.equals("mapped") ? Files.createTempFile("matrix", ".bin") : null;
+            try (OffHeapMatrix values = vectorizer.fitTransform(path, corpus, data.weights)) {
+                tree = new RecordingSplitter(new GiniSplitter(
+                    values, data.labels, data.weights, new GiniSplitter.Parameters()
+                )).grow();
+            } finally {
+                if (path != null) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+        // Only the features used by the tree need to be kept and computed for each query.
+        return new Model(vectorizer.compact(tree.features()), tree);
+    }
+
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        result.append(String.format("{\"budget\": %d, \"loads\": %d, \"evictions\": %d, "
+                                    + "\"models\": {", budget, loads.sum(), evictions.sum()));
+        String separator = "";
+        for (Map.Entry<String, Entry> entry : entries.get().entrySet()) {
+            Model model = entry.getValue().model.get();
+            result.append(String.format("%s\"%s\": %d", separator, entry.getKey(),
+                                        model == null ? 0 : model.bytes()));
+            separator = ", ";
+        }
+        return result.append("}}").toString();
+    }
+}
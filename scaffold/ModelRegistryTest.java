@@ -0,0 +1,82 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.time.*;
+
+public class ModelRegistryTest {
+
+    @Test
+    @DisplayName("get does not wait for training and load does")
+    public void testLoadInBackground() throws IOException {
+        ModelRegistry models = new ModelRegistry(1L << 30);
+        models.register("spam", new File("spam.tsv"));
+        ModelRegistry.LoadingException e = assertTimeoutPreemptively(Duration.ofSeconds(1), () ->
+            assertThrows(ModelRegistry.LoadingException.class, () -> models.get("spam"))
+        );
+        assertTrue(e.retryAfter >= 1);
+        ModelRegistry.Model model = models.load("spam");
+        assertSame(model, models.get("spam"));
+        assertTrue(models.toString().contains("\"loads\": 1"));
+    }
+
+    @Test
+    @DisplayName("models predict the same as a TextClassifier trained on the same file")
+    public void testClassifyMatchesTextClassifier() throws IOException {
+        ModelRegistry models = new ModelRegistry(1L << 30);
+        models.register("tiny", new File("tiny.tsv"));
+        ModelRegistry.Model model = models.load("tiny");
+        Dataset data = new Dataset(new File("tiny.tsv"));
+        Vectorizer vectorizer = new Vectorizer();
+        double[][] matrix = vectorizer.fitTransform(data.messages);
+        TextClassifier clf = new TextClassifier(vectorizer, new GiniSplitter(matrix, data.labels));
+        for (String message : data.messages) {
+            assertEquals(clf.classify(message), model.classify(message));
+        }
+        assertTrue(model.bytes() > 0);
+    }
+
+    @Test
+    @DisplayName("models trained off the heap predict the same as models trained on it")
+    public void testTrainOffHeap() throws IOException {
+        ModelRegistry heap = new ModelRegistry(1L << 30);
+        heap.register("tiny", new File("tiny.tsv"));
+        for (String matrix : new String[]{"direct", "mapped"}) {
+            ModelRegistry models = new ModelRegistry(1L << 30, matrix, false);
+            models.register("tiny", new File("tiny.tsv"));
+            ModelRegistry.Model model = models.load("tiny");
+            for (String message : new Dataset(new File("tiny.tsv")).messages) {
+                assertEquals(heap.load("tiny").classify(message), model.classify(message));
+            }
+        }
+        assertThrows(IllegalArgumentException.class,
+                     () -> new ModelRegistry(1L << 30, "disk", false));
+    }
+
+    @Test
+    @DisplayName("models trained on collapsed rows predict the same as models trained on every row")
+    public void testTrainCollapsed() throws IOException {
+        ModelRegistry rows = new ModelRegistry(1L << 30);
+        rows.register("spam", new File("spam.tsv"));
+        ModelRegistry collapsed = new ModelRegistry(1L << 30, "heap", true);
+        collapsed.register("spam", new File("spam.tsv"));
+        ModelRegistry.Model expected = rows.load("spam");
+        ModelRegistry.Model actual = collapsed.load("spam");
+        for (String message : new Dataset(new File("spam.tsv")).messages) {
+            assertEquals(expected.classify(message), actual.classify(message), message);
+        }
+    }
+
+    @Test
+    @DisplayName("loading a model over the budget evicts the least recently used one")
+    public void testEvict() throws IOException {
+        ModelRegistry models = new ModelRegistry(1);
+        models.register("a", new File("tiny.tsv"));
+        models.register("b", new File("tiny.tsv"));
+        models.load("a");
+        models.load("b");
+        assertThrows(ModelRegistry.LoadingException.class, () -> models.get("a"));
+        assertNotNull(models.get("b"));
+        assertTrue(models.toString().contains("\"evictions\": 1"));
+    }
+}
@@ -0,0 +1,107 @@
+import java.io.*;
+import java.util.*;
+
+// Decision trees for several labels that share one vectorizer, so each text is tokenized and
+// vectorized once no matter how many labels are predicted.
+public class MultiLabelClassifier {
+    private final Vectorizer vectorizer;
+    private final String[] names;
+    private final TextClassifier[] classifiers;
+
+    // Constructs a new MultiLabelClassifier with one tree for each of the given label names, grown
+    // by the corresponding splitter. The splitters should share the design matrix of the
+    // vectorizer, which is compacted to the features that the trees use.
+    public MultiLabelClassifier(Vectorizer vectorizer, String[] names, Splitter... splitters) {
+        if (names.length != splitters.length) {
+            throw new IllegalArgumentException("names length != splitters length");
+        }
+        this.names = names.clone();
+        RecordingSplitter[] trees = new RecordingSplitter[splitters.length];
+        this.classifiers = new TextClassifier[splitters.length];
+        SortedSet<Integer> features = new TreeSet<>();
+        for (int k = 0; k < splitters.length; k += 1) {
+            trees[k] = new RecordingSplitter(splitters[k]).grow();
+            for (int index : trees[k].features()) {
+                features.add(index);
+            }
+        }
+        // Keep only the features used by some tree so that texts are vectorized cheaply.
+        this.vectorizer = vectorizer.compact(
+            features.stream().mapToInt(Integer::intValue).toArray()
+        );
+        for (int k = 0; k < splitters.length; k += 1) {
+            classifiers[k] = new TextClassifier(this.vectorizer, trees[k]);
+        }
+    }
+
+    // Returns the predicted labels for the given text, in the same order as the label names.
+    public boolean[] classify(String text) {
+        return classify(vectorizer.transform(text)[0]);
+    }
+
+    // Returns the predicted labels for each of the given texts, in the same order as the texts.
+    public boolean[][] classifyAll(String... texts) {
+        double[][] matrix = vectorizer.transform(texts);
+        boolean[][] result = new boolean[texts.length][];
+        for (int i = 0; i < texts.length; i += 1) {
+            result[i] = classify(matrix[i]);
+        }
+        return result;
+    }
+
+    // Returns the predicted labels for the given design vector.
+    private boolean[] classify(double[] vector) {
+        boolean[] result = new boolean[classifiers.length];
+        for (int k = 0; k < classifiers.length; k += 1) {
+            result[k] = classifiers[k].classify(vector);
+        }
+        return result;
+    }
+
+    // Returns the label names.
+    public String[] names() {
+        return names.clone();
+    }
+
+    // Returns the TextClassifier for the given label name.
+    public TextClassifier classifier(String name) {
+        for (int k = 0; k < names.length; k += 1) {
+            if (names[k].equals(name)) {
+                return classifiers[k];
+            }
+        }
+        throw new IllegalArgumentException("unknown label: " + name);
+    }
+
+    // Prunes every tree to the given depth.
+    public void prune(int depth) {
+        for (TextClassifier clf : classifiers) {
+            clf.prune(depth);
+        }
+    }
+
+    // Returns a new MultiLabelClassifier trained on the given tsv file. The header names each
+    // column, and every column but the last is a label for the message in the last column.
+    public static MultiLabelClassifier train(File file) throws FileNotFoundException {
+        Dataset data = new Dataset(file);
+        Vectorizer vectorizer = new Vectorizer();
+        double[][] matrix = vectorizer.fitTransform(TokenCorpus.load(data.messages));
+        Splitter[] splitters = new Splitter[data.names.length];
+        for (int k = 0; k < data.names.length; k += 1) {
+            splitters[k] = new GiniSplitter(matrix, data.labels(data.names[k]));
+        }
+        return new MultiLabelClassifier(vectorizer, data.names, splitters);
+    }
+
+    public static void main(String[] args) throws FileNotFoundException {
+        if (args.length != 1) {
+            throw new IllegalArgumentException("java MultiLabelClassifier [tsv file]");
+        }
+        MultiLabelClassifier clf = train(new File(args[0]));
+        clf.prune(10);
+        for (String name : clf.names()) {
+            System.out.println("// " + name);
+            clf.classifier(name).print();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.util.*;
+
+public class MultiLabelClassifierTest {
+
+    @Test
+    @DisplayName("each label predicts the same as its own TextClassifier")
+    public void testClassifyMatchesTextClassifier() throws IOException {
+        Dataset data = new Dataset(new File("spam.tsv"));
+        String[] messages = Arrays.copyOf(data.messages, 1500);
+        boolean[][] labels = new boolean[2][messages.length];
+        for (int i = 0; i < messages.length; i += 1) {
+            labels[0][i] = data.labels[i];
+            labels[1][i] = messages[i].length() > 80;
+        }
+        Vectorizer vectorizer = new Vectorizer();
+        double[][] matrix = vectorizer.fitTransform(messages);
+        MultiLabelClassifier multi = new MultiLabelClassifier(
+            vectorizer, new String[]{"spam", "long"}, new GiniSplitter(matrix, labels[0]),
+            new GiniSplitter(matrix, labels[1])
+        );
+        TextClassifier[] single = new TextClassifier[labels.length];
+        for (int k = 0; k < labels.length; k += 1) {
+            single[k] = new TextClassifier(vectorizer, new GiniSplitter(matrix, labels[k]));
+        }
+        for (int depth : new int[]{Integer.MAX_VALUE, 10, 5}) {
+            multi.prune(depth);
+            for (TextClassifier clf : single) {
+                clf.prune(depth);
+            }
+            boolean[][] predicted = multi.classifyAll(messages);
+            for (int i = 0; i < messages.length; i += 1) {
+                assertArrayEquals(predicted[i], multi.classify(messages[i]));
+                for (int k = 0; k < labels.length; k += 1) {
+                    assertEquals(single[k].classify(messages[i]), predicted[i][k]);
+                }
+            }
+        }
+    }
+}
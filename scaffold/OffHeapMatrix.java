@@ -0,0 +1,171 @@
+import java.io.*;
+import java.lang.reflect.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+
+// Column-major design matrix stored outside the Java heap, either in direct memory or in a
+// memory-mapped file. A few large buffers replace one heap array per row, so the matrix adds almost
+// nothing to garbage collection work and a mapped matrix can be larger than the heap.
+//
+// The matrix uses NIO buffers rather than the Foreign Memory API's MemorySegment, which is in the
+// jdk.incubator.foreign module on JDK 17. Incubator modules are only used for optional speedups
+// with a portable fallback, such as VectorCounter, and training must not require --add-modules.
+//
+// Closing the matrix frees its direct memory or unmaps its file right away rather than whenever the
+// buffers are garbage collected, so a mapped file can be deleted as soon as the matrix is closed.
+public class OffHeapMatrix implements Closeable {
+    private final int rows;
+    private final int columns;
+    private final int columnsPerChunk;
+    private final ByteBuffer[] buffers;
+    private final DoubleBuffer[] chunks;
+
+    // The maximum number of doubles in one buffer.
+    private static final int MAX_CHUNK_SIZE = Integer.MAX_VALUE / Double.BYTES;
+
+    // Constructs a new OffHeapMatrix of zeros in direct memory with the given dimensions.
+    public OffHeapMatrix(int rows, int columns) {
+        this.rows = rows;
+        this.columns = columns;
+        this.columnsPerChunk = columnsPerChunk(rows);
+        this.buffers = new ByteBuffer[chunks(columns, columnsPerChunk)];
+        this.chunks = new DoubleBuffer[buffers.length];
+        for (int c = 0; c < chunks.length; c += 1) {
+            buffers[c] = ByteBuffer.allocateDirect(chunkBytes(c)).order(ByteOrder.nativeOrder());
+            chunks[c] = buffers[c].asDoubleBuffer();
+        }
+    }
+
+    // Constructs a new OffHeapMatrix with the given dimensions backed by the given file, which is
+    // created or extended as needed.
+    public OffHeapMatrix(int rows, int columns, Path file) throws IOException {
+        this.rows = rows;
+        this.columns = columns;
+        this.columnsPerChunk = columnsPerChunk(rows);
+        this.buffers = new ByteBuffer[chunks(columns, columnsPerChunk)];
+        this.chunks = new DoubleBuffer[buffers.length];
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                                                    StandardOpenOption.READ,
+                                                    StandardOpenOption.WRITE)) {
+            long position = 0;
+            for (int c = 0; c < chunks.length; c += 1) {
+                buffers[c] = channel.map(FileChannel.MapMode.READ_WRITE, position, chunkBytes(c))
+                                    .order(ByteOrder.nativeOrder());
+                chunks[c] = buffers[c].asDoubleBuffer();
+                position += chunkBytes(c);
+            }
+        }
+    }
+
+    // Returns the number of whole columns that fit in one buffer for the given number of rows.
+    private static int columnsPerChunk(int rows) {
+        if (rows < 0 || rows > MAX_CHUNK_SIZE) {
+            throw new IllegalArgumentException("rows must be between 0 and " + MAX_CHUNK_SIZE);
+        }
+        return Math.max(1, MAX_CHUNK_SIZE / Math.max(1, rows));
+    }
+
+    // Returns the number of buffers needed for the given number of columns.
+    private static int chunks(int columns, int columnsPerChunk) {
+        if (columns < 0) {
+            throw new IllegalArgumentException("columns must be non-negative");
+        }
+        return (columns + columnsPerChunk - 1) / columnsPerChunk;
+    }
+
+    // Returns the size in bytes of the given buffer.
+    private int chunkBytes(int chunk) {
+        int chunkColumns = Math.min(columnsPerChunk, columns - chunk * columnsPerChunk);
+        return chunkColumns * rows * Double.BYTES;
+    }
+
+    // Returns the number of rows (data points) in this matrix.
+    public int rows() {
+        return rows;
+    }
+
+    // Returns the number of columns (features) in this matrix.
+    public int columns() {
+        return columns;
+    }
+
+    // Returns the value at the given row and column.
+    public double get(int row, int column) {
+        return chunk(column).get(offset(row, column));
+    }
+
+    // Sets the value at the given row and column. Rows of the same column can be set concurrently.
+    public void set(int row, int column, double value) {
+        chunk(column).put(offset(row, column), value);
+    }
+
+    // Sets every value in the given column to the given value.
+    public void fill(int column, double value) {
+        DoubleBuffer chunk = chunk(column);
+        int start = start(column);
+        for (int i = 0; i < rows; i += 1) {
+            chunk.put(start + i, value);
+        }
+    }
+
+    // Copies the values in the given column for each of the given rows into the result array.
+    public void column(int column, int[] rows, double[] result) {
+        DoubleBuffer chunk = chunk(column);
+        int start = start(column);
+        for (int i = 0; i < rows.length; i += 1) {
+            result[i] = chunk.get(start + rows[i]);
+        }
+    }
+
+    // Frees the memory of this matrix or unmaps its file. The matrix cannot be used afterwards.
+    public void close() {
+        for (int c = 0; c < chunks.length; c += 1) {
+            ByteBuffer buffer = buffers[c];
+            chunks[c] = null;
+            buffers[c] = null;
+            if (buffer != null) {
+                free(buffer);
+            }
+        }
+    }
+
+    // Frees the given direct or mapped buffer through sun.misc.Unsafe.invokeCleaner, which the
+    // jdk.unsupported module exports without any flags. If that fails, the buffer is freed once it
+    // is garbage collected.
+    private static void free(ByteBuffer buffer) {
+        try {
+            Class<?> unsafe = Class.forName("sun.misc.Unsafe");
+            Field instance = unsafe.getDeclaredField("theUnsafe");
+            instance.setAccessible(true);
+            unsafe.getMethod("invokeCleaner", ByteBuffer.class).invoke(instance.get(null), buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Leave the buffer to the garbage collector.
+        }
+    }
+
+    // Returns the buffer that holds the given column.
+    private DoubleBuffer chunk(int column) {
+        DoubleBuffer chunk = chunks[column / columnsPerChunk];
+        if (chunk == null) {
+            throw new IllegalStateException("matrix is closed");
+        }
+        return chunk;
+    }
+
+    // Returns the position of the given row and column in its buffer.
+    private int offset(int row, int column) {
+        if (row < 0 || row >= rows) {
+            throw new IndexOutOfBoundsException("row " + row);
+        }
+        return start(column) + row;
+    }
+
+    // Returns the position of the first row of the given column in its buffer.
+    private int start(int column) {
+        if (column < 0 || column >= columns) {
+            throw new IndexOutOfBoundsException("column " + column);
+        }
+        return (column % columnsPerChunk) * rows;
+    }
+}
@@ -0,0 +1,87 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+public class OffHeapMatrixTest {
+    private static Dataset data;
+    private static TokenCorpus corpus;
+
+    @BeforeAll
+    public static void load() throws IOException {
+        data = new Dataset(new File("spam.tsv"));
+        corpus = TokenCorpus.from(data.messages);
+    }
+
+    // Asserts that the given classifier classifies and prints the same as the spam.tsv goldens.
+    private static void assertGoldens(TextClassifier clf) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        for (String text : data.messages) {
+            builder.append(clf.classify(text));
+            builder.append('\n');
+        }
+        assertEquals(read("spam.tsv.test1.txt"), builder.toString());
+
+        ByteArrayOutputStream b = new ByteArrayOutputStream();
+        PrintStream old = System.out;
+        System.setOut(new PrintStream(b));
+        clf.print();
+        System.out.flush();
+        System.setOut(old);
+        assertEquals(read("spam.tsv.test2.txt"), b.toString());
+    }
+
+    // Returns the contents of the given file.
+    private static String read(String filename) throws IOException {
+        Scanner input = new Scanner(new File(filename));
+        return input.useDelimiter("\\A").next();
+    }
+
+    @Test
+    @DisplayName("a tree grown from direct memory matches the spam.tsv goldens")
+    public void testDirect() throws IOException {
+        Vectorizer vectorizer = new Vectorizer();
+        RecordingSplitter tree;
+        try (OffHeapMatrix matrix = vectorizer.fitTransform(null, corpus)) {
+            assertEquals(data.size(), matrix.rows());
+            tree = new RecordingSplitter(new GiniSplitter(matrix, data.labels)).grow();
+        }
+        assertGoldens(new TextClassifier(vectorizer, tree));
+    }
+
+    @Test
+    @DisplayName("a tree grown from a mapped file matches the spam.tsv goldens")
+    public void testMapped() throws IOException {
+        Path file = Files.createTempFile("matrix", ".bin");
+        try {
+            Vectorizer vectorizer = new Vectorizer();
+            RecordingSplitter tree;
+            OffHeapMatrix closed;
+            try (OffHeapMatrix matrix = vectorizer.fitTransform(file, corpus)) {
+                assertEquals((long) matrix.rows() * matrix.columns() * Double.BYTES,
+                             Files.size(file));
+                tree = new RecordingSplitter(new GiniSplitter(matrix, data.labels)).grow();
+                closed = matrix;
+            }
+            assertThrows(IllegalStateException.class, () -> closed.get(0, 0));
+            assertGoldens(new TextClassifier(vectorizer, tree));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    @DisplayName("off-heap values match the heap design matrix")
+    public void testMatchesHeap() throws IOException {
+        double[][] expected = new Vectorizer().fitTransform(corpus);
+        try (OffHeapMatrix matrix = new Vectorizer().fitTransform(null, corpus)) {
+            for (int i = 0; i < expected.length; i += 1) {
+                for (int j = 0; j < expected[i].length; j += 1) {
+                    assertEquals(expected[i][j], matrix.get(i, j));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+import java.util.*;
+
+// Streaming quantile sketch that summarizes any number of values in bounded space. Values are
+// buffered by level; when a level's buffer fills up, it is sorted and every other value is promoted
+// to the next level with twice the weight (Karnin, Lang, and Liberty 2016).
+public class QuantileSketch {
+    private final int capacity;
+    private double[][] levels;
+    private int[] sizes;
+    private boolean offset;
+
+    // Constructs a new empty QuantileSketch that keeps at most the given values per level.
+    public QuantileSketch(int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("capacity must be at least 2");
+        }
+        this.capacity = capacity;
+        this.levels = new double[0][];
+        this.sizes = new int[0];
+        this.offset = false;
+    }
+
+    // Adds the given value to this sketch.
+    public void add(double value) {
+        add(0, value);
+    }
+
+    // Adds the given number of copies of the given value to this sketch. Each power of two in the
+    // number of copies goes straight to the level whose values carry that weight, so a heavily
+    // weighted value takes logarithmic rather than linear time.
+    public void add(double value, long copies) {
+        if (copies < 0) {
+            throw new IllegalArgumentException("copies must be non-negative");
+        }
+        for (int level = 0; copies != 0; level += 1) {
+            if ((copies & 1) != 0) {
+                add(level, value);
+            }
+            copies >>>= 1;
+        }
+    }
+
+    // Adds the given value to the given level, compacting the level if it is full.
+    private void add(int level, double value) {
+        while (level >= levels.length) {
+            levels = Arrays.copyOf(levels, levels.length + 1);
+            levels[levels.length - 1] = new double[capacity];
+            sizes = Arrays.copyOf(sizes, levels.length);
+        }
+        double[] buffer = levels[level];
+        buffer[sizes[level]] = value;
+        sizes[level] += 1;
+        if (sizes[level] < capacity) {
+            return;
+        }
+        // Promote every other value, alternating between the even and odd positions so that the
+        // rank error of successive compactions cancels out instead of accumulating.
+        sizes[level] = 0;
+        Arrays.sort(buffer);
+        offset = !offset;
+        for (int i = offset ? 1 : 0; i < capacity; i += 2) {
+            add(level + 1, buffer[i]);
+        }
+    }
+
+    // Returns up to the given number of distinct values in ascending order at evenly-spaced ranks.
+    public double[] quantiles(int count) {
+        int total = 0;
+        for (int size : sizes) {
+            total += size;
+        }
+        double[] values = new double[total];
+        long[] weights = new long[total];
+        int n = 0;
+        for (int level = 0; level < levels.length; level += 1) {
+            for (int i = 0; i < sizes[level]; i += 1) {
+                values[n] = levels[level][i];
+                weights[n] = 1L << level;
+                n += 1;
+            }
+        }
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i += 1) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingDouble(i -> values[i]));
+        long totalWeight = 0;
+        for (long weight : weights) {
+            totalWeight += weight;
+        }
+        SortedSet<Double> result = new TreeSet<>();
+        long cumulative = 0;
+        int q = 1;
+        for (int i = 0; i < n && q <= count; i += 1) {
+            cumulative += weights[order[i]];
+            while (q <= count && cumulative * (count + 1) >= q * totalWeight) {
+                result.add(values[order[i]]);
+                q += 1;
+            }
+        }
+        return result.stream().mapToDouble(Double::doubleValue).toArray();
+    }
+}
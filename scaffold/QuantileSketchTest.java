@@ -0,0 +1,60 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+
+public class QuantileSketchTest {
+
+    @Test
+    @DisplayName("adding copies at once matches adding each copy")
+    public void testAddCopies() {
+        QuantileSketch copies = new QuantileSketch(256);
+        QuantileSketch each = new QuantileSketch(256);
+        long[] weights = {97, 1, 1, 1, 6, 13};
+        for (int v = 0; v < weights.length; v += 1) {
+            copies.add(v, weights[v]);
+            for (int c = 0; c < weights[v]; c += 1) {
+                each.add(v);
+            }
+        }
+        for (int count : new int[]{1, 3, 16, 64}) {
+            assertArrayEquals(each.quantiles(count), copies.quantiles(count));
+        }
+        assertArrayEquals(new double[]{0.0}, copies.quantiles(1));
+    }
+
+    @Test
+    @DisplayName("sketch thresholds of collapsed rows match every copy")
+    public void testWeightedSketchSplit() {
+        // 97 copies of 0 labeled false, then 1 labeled false and 2 and 3 labeled true. Two sketch
+        // candidates for all 100 copies split at 0, and the four distinct values alone split at 1.
+        double[] values = {0, 1, 2, 3};
+        boolean[] labels = {false, false, true, true};
+        double[] weights = {97, 1, 1, 1};
+        GiniSplitter.Parameters parameters = new GiniSplitter.Parameters(
+            GiniSplitter.MIN_IMPURITY_DECREASE, GiniSplitter.MIN_SIZE_SPLIT, 0, 2
+        );
+        double[][] matrix = new double[values.length][];
+        List<double[]> expandedRows = new ArrayList<>();
+        List<Boolean> expandedLabels = new ArrayList<>();
+        for (int i = 0; i < values.length; i += 1) {
+            matrix[i] = new double[]{values[i]};
+            for (int c = 0; c < weights[i]; c += 1) {
+                expandedRows.add(matrix[i]);
+                expandedLabels.add(labels[i]);
+            }
+        }
+        boolean[] y = new boolean[expandedLabels.size()];
+        double[] ones = new double[y.length];
+        for (int i = 0; i < y.length; i += 1) {
+            y[i] = expandedLabels.get(i);
+            ones[i] = 1.0;
+        }
+        Splitter.Result expanded = new GiniSplitter(
+            expandedRows.toArray(new double[0][]), y, ones, parameters
+        ).split();
+        Splitter.Result collapsed = new GiniSplitter(matrix, labels, weights, parameters).split();
+        assertEquals(0.0, expanded.threshold);
+        assertEquals(expanded.threshold, collapsed.threshold);
+    }
+}
@@ -0,0 +1,89 @@
+import java.util.*;
+
+// Records the splits chosen by another splitter so that the resulting tree can be replayed, for
+// example to build a TextClassifier after growing the tree. Each split is computed once, after
+// which the underlying splitter and its data are released.
+public class RecordingSplitter implements Splitter {
+    private Splitter splitter;
+    private Result result;
+    private boolean label;
+    private int size;
+    private double weight;
+
+    // Constructs a new RecordingSplitter that records the splits chosen by the given splitter.
+    public RecordingSplitter(Splitter splitter) {
+        this.splitter = splitter;
+        this.label = splitter.label();
+        this.size = splitter.size();
+        this.weight = splitter.weight();
+    }
+
+    // Returns the recorded split and the left and right recording splitters, or null if no good
+    // split exists.
+    public Result split() {
+        if (splitter != null) {
+            Result split = splitter.split();
+            if (split != null) {
+                result = new Result(split.index, split.threshold,
+                                    new RecordingSplitter(split.left),
+                                    new RecordingSplitter(split.right));
+            }
+            splitter = null;
+        }
+        return result;
+    }
+
+    // Returns the majority label for this splitter.
+    public boolean label() {
+        return label;
+    }
+
+    // Returns the number of data points in this splitter.
+    public int size() {
+        return size;
+    }
+
+    // Returns the total weight of data points in this splitter.
+    public double weight() {
+        return weight;
+    }
+
+    // Records every split in the tree rooted at this splitter and returns this instance. Splits
+    // from an explicit stack rather than by recursion so that only unsplit nodes hold data.
+    public RecordingSplitter grow() {
+        Deque<RecordingSplitter> frontier = new ArrayDeque<>();
+        frontier.push(this);
+        while (!frontier.isEmpty()) {
+            Result split = frontier.pop().split();
+            if (split != null) {
+                frontier.push((RecordingSplitter) split.right);
+                frontier.push((RecordingSplitter) split.left);
+            }
+        }
+        return this;
+    }
+
+    // Returns the indices of the features used by the recorded splits in ascending order.
+    public int[] features() {
+        return features(Integer.MAX_VALUE);
+    }
+
+    // Returns the indices of the features used by the recorded splits within the given depth in
+    // ascending order, as if the tree were pruned to the given depth.
+    public int[] features(int depth) {
+        SortedSet<Integer> result = new TreeSet<>();
+        features(depth, result);
+        return result.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    // Adds the indices of the features used by the recorded splits within the given depth to the
+    // given set.
+    private void features(int depth, Set<Integer> result) {
+        Result split = split();
+        if (depth > 0 && split != null) {
+            result.add(split.index);
+            ((RecordingSplitter) split.left).features(depth - 1, result);
+            ((RecordingSplitter) split.right).features(depth - 1, result);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+import java.io.*;
+import java.lang.management.*;
+import java.nio.file.*;
+import java.util.*;
+
+// Measures how training and classification scale with the number of texts on deterministic
+// synthetic data. For each size, reports the wall time, peak heap and bytes allocated by each
+// stage: fitting the vectorizer, building the tree, pruning it, and classifying every text.
+//
+// Run with UTF-8 file encoding as java ScalingBenchmark [mode] [rows]..., where the mode is the
+// split search: exact, sketch, or sample. The exact search sorts every column at every node, so
+// without sizes it measures 10^3 to 3 * 10^4 rows, which finish in about two minutes on the default
+// heap. The approximate modes measure 10^4 to 10^7 rows without sizes. Sizes over MAX_HEAP_ROWS
+// train from a design matrix in a memory-mapped temporary file, which is not counted in the peak
+// heap, so the heap only holds the texts and their term ids, about 500 bytes per row. The matrix
+// takes about 5.6 KB per row with the default vectorizer, so 10^7 rows need -Xmx8g and 60 GB of
+// temporary disk space, and building the tree waits on the disk unless the file fits in the page
+// cache. Building takes more than linear time: in sample mode on one core, 9 seconds for 10^4 rows
+// and two minutes for 10^5. Sizes that run out of memory are reported as such, and larger sizes
+// are skipped.
+public class ScalingBenchmark {
+    // Depth that the tree is pruned to.
+    private static final int DEPTH = 10;
+    // Seed for the synthetic data and for choosing samples so that every run measures the same.
+    private static final long SEED = 373;
+    // The largest number of rows to train from a design matrix on the heap.
+    private static final int MAX_HEAP_ROWS = 100000;
+    // Splitters with more data points than this use the quantile sketch in sketch mode, with this
+    // many candidate thresholds.
+    private static final int MIN_SIZE_SKETCH = 1000;
+    private static final int CANDIDATES = 64;
+    // Splitters with more data points than this choose splits from a sample of this many in sample
+    // mode.
+    private static final int SAMPLE_SIZE = 2000;
+
+    public static void main(String[] args) throws IOException {
+        String mode = args.length > 0 ? args[0] : "exact";
+        GiniSplitter.Parameters parameters = parameters(mode);
+        int[] sizes = new int[]{10000, 100000, 1000000, 10000000};
+        if (mode.equals("exact")) {
+            sizes = new int[]{1000, 3000, 10000, 30000};
+        }
+        if (args.length > 1) {
+            sizes = Arrays.stream(args, 1, args.length).mapToInt(Integer::parseInt).toArray();
+        }
+        SyntheticData data = new SyntheticData(SEED);
+        System.out.printf("%s split search%n", mode);
+        System.out.printf("%-9s %-9s %9s %11s %11s%n", "rows", "stage", "seconds", "peak MB",
+                          "alloc MB");
+        for (int N : sizes) {
+            // Write the data to a file and read it back the same way as the other programs do.
+            File file = File.createTempFile("synthetic", ".tsv");
+            file.deleteOnExit();
+            try (PrintStream output = new PrintStream(new BufferedOutputStream(
+                    new FileOutputStream(file), 1 << 16))) {
+                data.write(output, N);
+            }
+            Dataset read = new Dataset(file);
+            boolean[] labels = read.labels;
+            String[] messages = read.messages;
+            file.delete();
+
+            double[] weights = new double[N];
+            Arrays.fill(weights, 1.0);
+            try {
+                Vectorizer vectorizer = new Vectorizer();
+                TextClassifier[] clf = new TextClassifier[1];
+                if (N <= MAX_HEAP_ROWS) {
+                    double[][][] matrix = new double[1][][];
+                    measure(N, "fit", () -> {
+                        matrix[0] = vectorizer.fitTransform(messages);
+                    });
+                    measure(N, "build", () -> {
+                        // Grow the tree without keeping the design matrix so that its rows are
+                        // released as their leaves are built.
+                        Splitter splitter = new GiniSplitter(matrix[0], labels, weights,
+                                                             parameters);
+                        matrix[0] = null;
+                        clf[0] = new TextClassifier(vectorizer,
+                                                    new RecordingSplitter(splitter).grow());
+                    });
+                } else {
+                    Path path = Files.createTempFile("matrix", ".bin");
+                    OffHeapMatrix[] matrix = new OffHeapMatrix[1];
+                    try {
+                        measure(N, "fit", () -> {
+                            try {
+                                TokenCorpus corpus = TokenCorpus.from(messages);
+                                matrix[0] = vectorizer.fitTransform(path, corpus);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        });
+                        measure(N, "build", () -> {
+                            Splitter splitter = new GiniSplitter(matrix[0], labels, weights,
+                                                                 parameters);
+                            clf[0] = new TextClassifier(vectorizer,
+                                                        new RecordingSplitter(splitter).grow());
+                        });
+                    } finally {
+                        if (matrix[0] != null) {
+                            matrix[0].close();
+                        }
+                        Files.delete(path);
+                    }
+                }
+                measure(N, "prune", () -> {
+                    clf[0].prune(DEPTH);
+                });
+                int[] correct = new int[1];
+                measure(N, "classify", () -> {
+                    for (int i = 0; i < N; i += 1) {
+                        if (clf[0].classify(messages[i]) == labels[i]) {
+                            correct[0] += 1;
+                        }
+                    }
+                });
+                System.out.printf("%-9d %d features, training accuracy %.4f%n", N,
+                                  vectorizer.size(), correct[0] / (double) N);
+            } catch (OutOfMemoryError e) {
+                System.out.printf("%-9d out of memory%n", N);
+                return;
+            }
+        }
+    }
+
+    // Returns the splitter parameters for the given split search mode: exact, sketch, or sample.
+    private static GiniSplitter.Parameters parameters(String mode) {
+        if (mode.equals("exact")) {
+            return new GiniSplitter.Parameters();
+        } else if (mode.equals("sketch")) {
+            return new GiniSplitter.Parameters(GiniSplitter.MIN_IMPURITY_DECREASE,
+                                               GiniSplitter.MIN_SIZE_SPLIT, MIN_SIZE_SKETCH,
+                                               CANDIDATES);
+        } else if (mode.equals("sample")) {
+            return new GiniSplitter.Parameters(GiniSplitter.MIN_IMPURITY_DECREASE,
+                                               GiniSplitter.MIN_SIZE_SPLIT, Integer.MAX_VALUE,
+                                               CANDIDATES, SAMPLE_SIZE, new Random(SEED));
+        }
+        throw new IllegalArgumentException("java ScalingBenchmark [exact|sketch|sample] [rows]...");
+    }
+
+    // Runs the given stage and prints its wall time, peak heap, and the bytes that it allocated.
+    // The peak heap is the sum of the peaks of each memory pool, which may be reached at different
+    // times, so it is an upper bound on the true peak. Allocation is counted across all threads
+    // that are alive when the stage finishes, which includes the common pool used by parallel
+    // streams.
+    private static void measure(int N, String stage, Runnable runnable) {
+        System.gc();
+        List<MemoryPoolMXBean> pools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                pools.add(pool);
+            }
+        }
+        Map<Long, Long> allocatedBefore = allocated();
+        long start = System.nanoTime();
+        runnable.run();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long allocated = 0;
+        for (Map.Entry<Long, Long> thread : allocated().entrySet()) {
+            allocated += thread.getValue() - allocatedBefore.getOrDefault(thread.getKey(), 0L);
+        }
+        long peak = 0;
+        for (MemoryPoolMXBean pool : pools) {
+            peak += pool.getPeakUsage().getUsed();
+        }
+        System.out.printf("%-9d %-9s %9.3f %11.1f %11.1f%n", N, stage, seconds, peak / 1e6,
+                          allocated / 1e6);
+    }
+
+    // Returns the bytes allocated so far by each live thread, keyed by thread id.
+    private static Map<Long, Long> allocated() {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long[] ids = threads.getAllThreadIds();
+        long[] bytes = threads.getThreadAllocatedBytes(ids);
+        Map<Long, Long> result = new HashMap<>();
+        for (int i = 0; i < ids.length; i += 1) {
+            if (bytes[i] >= 0) {
+                result.put(ids[i], bytes[i]);
+            }
+        }
+        return result;
+    }
+}
@@ -1,4 +1,5 @@
 import java.util.*;
+import java.util.concurrent.*;
 import java.io.*;
 import java.net.*;
 import java.nio.file.*;
@@ -8,44 +9,254 @@ import com.sun.net.httpserver.*;
 public class Server {
     // Port number used to connect to this server
     private static final int PORT = Integer.parseInt(System.getenv().getOrDefault("PORT", "8000"));
+    // Port number of the binary protocol listener, or null to disable the listener
+    private static final String BINARY_PORT = System.getenv("BINARY_PORT");
+    // Secret required by the /reload endpoint, or null to disable the endpoint
+    private static final String RELOAD_TOKEN = System.getenv("RELOAD_TOKEN");
+    // Number of threads that handle requests
+    private static final int THREADS = Integer.parseInt(System.getenv().getOrDefault(
+        "THREADS", Integer.toString(Runtime.getRuntime().availableProcessors())
+    ));
+    // Longest time in milliseconds that a query may take, including time spent waiting to run
+    private static final long DEADLINE_MS = Long.parseLong(
+        System.getenv().getOrDefault("DEADLINE_MS", "500")
+    );
+    // Time in milliseconds that a model's file must go unchanged before the model is reloaded
+    private static final long RELOAD_QUIET_MS = Long.parseLong(
+        System.getenv().getOrDefault("RELOAD_QUIET_MS", "2000")
+    );
+    // Where models keep their design matrix while training: heap, direct, or mapped
+    private static final String TRAIN_MATRIX = System.getenv().getOrDefault("TRAIN_MATRIX", "heap");
+    // Whether models train on duplicate rows once, weighted by their count
+    private static final boolean COLLAPSE = Boolean.parseBoolean(
+        System.getenv().getOrDefault("COLLAPSE", "false")
+    );
+    // Number of threads that parse requests before queries are handed to admission control
+    private static final int DISPATCH_THREADS = 2;
+    // Largest total size in megabytes of the models kept loaded at once, by default a quarter of
+    // the maximum heap size
+    private static final long MODEL_BUDGET_MB = Long.parseLong(System.getenv().getOrDefault(
+        "MODEL_BUDGET_MB", Long.toString(Runtime.getRuntime().maxMemory() / 4 >> 20)
+    ));
+    // Largest number of typing sessions kept, longest text kept for a session, and time in
+    // milliseconds after which an idle session is dropped
+    private static final int SESSIONS = Integer.parseInt(
+        System.getenv().getOrDefault("SESSIONS", "4096")
+    );
+    private static final int SESSION_LENGTH = Integer.parseInt(
+        System.getenv().getOrDefault("SESSION_LENGTH", "65536")
+    );
+    private static final long SESSION_IDLE_MS = Long.parseLong(
+        System.getenv().getOrDefault("SESSION_IDLE_MS", "600000")
+    );
+
+    // The models served by name. Each is replaced as a whole so queries never see a partial model.
+    private static final ModelRegistry models =
+        new ModelRegistry(MODEL_BUDGET_MB << 20, TRAIN_MATRIX, COLLAPSE);
+    // Word counts of texts being typed, so that each keystroke only processes what changed.
+    private static final Sessions sessions = new Sessions(SESSIONS, SESSION_LENGTH,
+                                                          SESSION_IDLE_MS);
+    // Admits, queues, and runs requests, rejecting queries that would not finish in time.
+    private static final AdmissionController admission = new AdmissionController(THREADS,
+                                                                                  DEADLINE_MS);
 
     public static void main(String[] args) throws IOException, URISyntaxException {
-        if (args.length != 1) {
-            throw new IllegalArgumentException("java Server [tsv file]");
-        }
-        File file = new File(args[0]);
-        Scanner input = new Scanner(file);
-        int N = 0;
-        input.nextLine(); // Skip header
-        while (input.hasNextLine()) {
-            N += 1;
-            input.nextLine();
+        if (args.length == 0) {
+            throw new IllegalArgumentException("java Server [tsv file]...");
         }
-        boolean[] labels = new boolean[N];
-        String[] messages = new String[N];
-        input = new Scanner(file);
-        input.nextLine(); // Skip header
-        for (int i = 0; i < N; i += 1) {
-            Scanner line = new Scanner(input.nextLine()).useDelimiter("\t");
-            labels[i] = line.nextBoolean();
-            messages[i] = line.next();
+        // Each model is named after its file without the extension, e.g. spam.tsv serves spam.
+        for (String arg : args) {
+            File file = new File(arg);
+            models.register(file.getName().replaceFirst("\\.[^.]*$", ""), file);
         }
+        String defaultModel = models.names().get(0);
+        models.load(defaultModel);
 
-        Vectorizer vectorizer = new Vectorizer();
-        Splitter splitter = new GiniSplitter(vectorizer.fitTransform(messages), labels);
-        TextClassifier clf = new TextClassifier(vectorizer, splitter);
-
+        // Without TCP_NODELAY, each response waits on the client's delayed acknowledgement because
+        // the headers and body are written separately, adding about 40 ms to every query.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
         HttpServer server = HttpServer.create(new InetSocketAddress(PORT), 0);
         server.createContext("/", (HttpExchange t) -> {
             String html = Files.readString(Paths.get("index.html"));
             send(t, "text/html; charset=utf-8", html);
         });
-        server.createContext("/query", (HttpExchange t) -> {
-            String s = parse("s", t.getRequestURI().getQuery().split("&"));
-            send(t, "application/json", Boolean.toString(clf.classify(s)));
+        // Queries go through admission control, while other pages are cheap and served directly.
+        server.createContext("/query", (HttpExchange t) -> admission.execute(() -> {
+            try {
+                query(t, defaultModel);
+            } catch (IOException | RuntimeException e) {
+                // Close the connection, as the server does when a handler throws.
+                t.close();
+            }
+        }));
+        server.createContext("/stats", (HttpExchange t) -> {
+            send(t, "application/json", "{\"stems\": " + Vectorizer.stemCache()
+                                        + ", \"admission\": " + admission
+                                        + ", \"models\": " + models
+                                        + ", \"sessions\": " + sessions + "}");
         });
-        server.setExecutor(null);
+        if (RELOAD_TOKEN != null) {
+            server.createContext("/reload", (HttpExchange t) -> {
+                String query = t.getRequestURI().getQuery();
+                if (query == null || !RELOAD_TOKEN.equals(parse("token", query.split("&")))) {
+                    t.sendResponseHeaders(403, -1);
+                    t.close();
+                    return;
+                }
+                String model = parse("model", query.split("&"));
+                String name = model.isEmpty() ? defaultModel : model;
+                if (!models.names().contains(name)) {
+                    t.sendResponseHeaders(404, -1);
+                    t.close();
+                    return;
+                }
+                send(t, "application/json", Boolean.toString(models.reload(name)));
+            });
+        }
+        // Parses requests on a few threads that hand queries to admission control and serve other
+        // pages, such as /stats and /reload, without queueing them behind queries.
+        server.setExecutor(Executors.newFixedThreadPool(DISPATCH_THREADS));
         server.start();
+        if (BINARY_PORT != null) {
+            // Moves bytes on a single thread and answers requests under admission control.
+            BinaryListener listener = new BinaryListener(Integer.parseInt(BINARY_PORT), models,
+                                                         defaultModel, admission);
+            new Thread(listener, "binary").start();
+        }
+        watch();
+    }
+
+    // Reloads each model once its file has not changed for RELOAD_QUIET_MS, so that a file that is
+    // still being written is not trained on. Blocks the calling thread.
+    private static void watch() throws IOException {
+        Map<Path, String> names = new HashMap<>();
+        for (String name : models.names()) {
+            names.put(models.file(name).toPath().toAbsolutePath(), name);
+        }
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            for (Path dir : new HashSet<>(names.keySet().stream().map(Path::getParent).toList())) {
+                dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                             StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+            // The last time each changed model's file was written, in System.nanoTime units.
+            Map<String, Long> changed = new HashMap<>();
+            while (true) {
+                long wait = Long.MAX_VALUE;
+                for (long last : changed.values()) {
+                    wait = Math.min(wait, last + RELOAD_QUIET_MS * 1_000_000 - System.nanoTime());
+                }
+                WatchKey key;
+                if (changed.isEmpty()) {
+                    key = watcher.take();
+                } else {
+                    key = watcher.poll(Math.max(0, wait), TimeUnit.NANOSECONDS);
+                }
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        Path path = ((Path) key.watchable()).resolve((Path) event.context());
+                        if (names.containsKey(path)) {
+                            changed.put(names.get(path), System.nanoTime());
+                        }
+                    }
+                    key.reset();
+                }
+                Iterator<Map.Entry<String, Long>> quiet = changed.entrySet().iterator();
+                while (quiet.hasNext()) {
+                    Map.Entry<String, Long> entry = quiet.next();
+                    if (System.nanoTime() - entry.getValue() >= RELOAD_QUIET_MS * 1_000_000) {
+                        quiet.remove();
+                        models.reload(entry.getKey());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Answers a query, or rejects it if admission control did.
+    private static void query(HttpExchange t, String defaultModel) throws IOException {
+        // Shed load before doing any work: rejected queries get 429 if the server is over its
+        // concurrency limit and 503 if they would wait too long, and admitted queries get 503
+        // if they waited past their deadline, which clients may shorten with a deadline
+        // parameter in milliseconds.
+        AdmissionController.Ticket ticket = admission.ticket();
+        if (!ticket.admitted()) {
+            reject(t, ticket.status);
+            return;
+        }
+        String[] params = t.getRequestURI().getQuery().split("&");
+        String deadline = parse("deadline", params);
+        if (admission.expired(deadline.matches("\\d{1,9}") ? Long.parseLong(deadline) : 0)) {
+            reject(t, 503);
+            return;
+        }
+        // A single model answers true or false. Several comma-separated models share the text
+        // processing and answer a JSON object with each model's prediction.
+        String model = parse("model", params);
+        String[] names = model.isEmpty() ? new String[]{defaultModel} : model.split(",");
+        if (!models.names().containsAll(Arrays.asList(names))) {
+            t.sendResponseHeaders(404, -1);
+            t.close();
+            return;
+        }
+        ModelRegistry.Model[] queried = new ModelRegistry.Model[names.length];
+        try {
+            for (int j = 0; j < names.length; j += 1) {
+                queried[j] = models.get(names[j]);
+            }
+        } catch (ModelRegistry.LoadingException e) {
+            // The model is training in the background, so the client should retry once it is done.
+            reject(t, 503, e.retryAfter);
+            return;
+        }
+        String s = parse("s", params);
+        String session = parse("session", params);
+        Map<String, Boolean> result = new LinkedHashMap<>();
+        if (session.isEmpty()) {
+            Vectorizer.BagOfWords document = Vectorizer.BagOfWords.from(s);
+            for (int j = 0; j < names.length; j += 1) {
+                result.put(names[j], queried[j].classify(document));
+            }
+        } else {
+            // Queries from the same session update its text, by default replacing all of it or
+            // from the given offset onward, and only process the part that changed.
+            String offset = parse("offset", params);
+            boolean[] predictions;
+            try {
+                predictions = sessions.update(
+                    session, offset.matches("\\d{1,9}") ? Integer.parseInt(offset) : -1, s,
+                    document -> {
+                        boolean[] labels = new boolean[queried.length];
+                        for (int j = 0; j < queried.length; j += 1) {
+                            labels[j] = queried[j].classify(document);
+                        }
+                        return labels;
+                    }
+                );
+            } catch (Sessions.StaleOffsetException e) {
+                // The offset is past the end of the session text, such as after it expired, so
+                // the client needs to send the whole text.
+                t.sendResponseHeaders(409, -1);
+                t.close();
+                return;
+            }
+            for (int j = 0; j < names.length; j += 1) {
+                result.put(names[j], predictions[j]);
+            }
+        }
+        if (names.length == 1) {
+            send(t, "application/json", result.get(names[0]).toString());
+        } else {
+            StringBuilder json = new StringBuilder("{");
+            for (Map.Entry<String, Boolean> entry : result.entrySet()) {
+                if (json.length() > 1) {
+                    json.append(", ");
+                }
+                json.append("\"" + entry.getKey() + "\": " + entry.getValue());
+            }
+            send(t, "application/json", json.append("}").toString());
+        }
     }
 
     private static String parse(String key, String... params) {
@@ -58,6 +269,20 @@ public class Server {
         return "";
     }
 
+    // Responds to the given exchange with the given error status and no body, asking the client to
+    // retry after a second.
+    private static void reject(HttpExchange t, int status) throws IOException {
+        reject(t, status, 1);
+    }
+
+    // Responds to the given exchange with the given error status and no body, asking the client to
+    // retry after the given number of seconds.
+    private static void reject(HttpExchange t, int status, long seconds) throws IOException {
+        t.getResponseHeaders().set("Retry-After", Long.toString(seconds));
+        t.sendResponseHeaders(status, -1);
+        t.close();
+    }
+
     private static void send(HttpExchange t, String contentType, String data)
             throws IOException, UnsupportedEncodingException {
         t.getResponseHeaders().set("Content-Type", contentType);
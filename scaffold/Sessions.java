@@ -0,0 +1,187 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+
+// Word counts of texts that clients edit over many requests, such as a comment that is classified
+// as it is typed. Each session keeps its latest text and the counts of its words so that an update
+// only tokenizes and stems the part of the text that changed instead of the whole text. Sessions
+// expire after being idle, and the least recently used sessions are dropped beyond the limit.
+// Updates look sessions up without a shared lock; expired sessions are swept out every so many
+// updates, and excess sessions whenever a new session goes over the limit.
+public class Sessions {
+    private final ConcurrentHashMap<String, Session> sessions;
+    private final int capacity;
+    private final int maxLength;
+    private final long idle;
+    // Number of updates since the last sweep, and true while a thread is sweeping.
+    private final AtomicInteger unswept;
+    private final AtomicBoolean sweeping;
+    // Number of updates, characters processed by updates, and characters in the updated texts,
+    // which would all be processed without sessions.
+    private final LongAdder updates;
+    private final LongAdder processed;
+    private final LongAdder total;
+
+    // The number of updates between sweeps for expired sessions.
+    private static final int SWEEP_INTERVAL = 1024;
+
+    // Thrown when an update starts past the end of the session text, such as after the session
+    // expired, so the client needs to send the whole text again.
+    public static class StaleOffsetException extends IllegalStateException {
+        private static final long serialVersionUID = 1L;
+
+        public StaleOffsetException(int offset, int length) {
+            super("offset " + offset + " is past the end of the session text of length " + length);
+        }
+    }
+
+    // The latest text of a session and the counts of the words in it.
+    private static class Session {
+        public String text;
+        // Counts of the words in text, except that a blank text has no words at all.
+        public final Vectorizer.BagOfWords words;
+        // The last time the session was updated, in System.nanoTime units.
+        public volatile long lastUsed;
+
+        public Session(long now) {
+            this.text = "";
+            this.words = Vectorizer.BagOfWords.empty();
+            this.lastUsed = now;
+        }
+    }
+
+    // Constructs a new Sessions that keeps at most the given number of sessions with texts of at
+    // most the given length, expiring sessions that have not been updated in the given
+    // milliseconds.
+    public Sessions(int capacity, int maxLength, long idleMillis) {
+        if (capacity < 1 || maxLength < 0 || idleMillis < 1) {
+            throw new IllegalArgumentException("invalid session limits");
+        }
+        this.sessions = new ConcurrentHashMap<>();
+        this.capacity = capacity;
+        this.maxLength = maxLength;
+        this.idle = idleMillis * 1_000_000;
+        this.unswept = new AtomicInteger();
+        this.sweeping = new AtomicBoolean();
+        this.updates = new LongAdder();
+        this.processed = new LongAdder();
+        this.total = new LongAdder();
+    }
+
+    // Replaces the text of the given session from the given offset onward with the given text, or
+    // replaces the whole text if the offset is negative, and returns the result of applying the
+    // given function to the words of the new text. Only the words around the change are processed,
+    // and when the whole text is replaced, the change starts where the new text first differs from
+    // the old. The words must not be used after the function returns. Texts longer than the maximum
+    // length are processed in full and not kept. Throws StaleOffsetException if the offset is past
+    // the end of the session text.
+    public <T> T update(String id, int offset, String text, Function<Vectorizer.BagOfWords, T> f) {
+        Session session = session(id);
+        synchronized (session) {
+            String old = session.text;
+            if (offset > old.length()) {
+                throw new StaleOffsetException(offset, old.length());
+            }
+            String next = offset < 0 ? text : old.substring(0, offset) + text;
+            int start = offset < 0 ? commonPrefix(old, next) : offset;
+            if (next.length() > maxLength) {
+                sessions.remove(id, session);
+                return f.apply(Vectorizer.BagOfWords.from(next));
+            }
+            // Tokens never span whitespace, so the words of the text before the whitespace that
+            // precedes the change stay the same.
+            while (start > 0 && !isSpace(old.charAt(start - 1))) {
+                start -= 1;
+            }
+            // Keep the preceding space, since the tokenizer splits a quote at the start of a text
+            // differently than a quote after a space.
+            int from = Math.max(0, start - 1);
+            String removed = old.substring(from);
+            String added = next.substring(from);
+            if (!removed.trim().isEmpty()) {
+                session.words.remove(Vectorizer.BagOfWords.from(removed));
+            }
+            if (!added.trim().isEmpty()) {
+                session.words.add(Vectorizer.BagOfWords.from(added));
+            }
+            session.text = next;
+            updates.increment();
+            processed.add(removed.length() + added.length());
+            total.add(next.length());
+            if (next.trim().isEmpty()) {
+                // The tokenizer turns a blank text into a single empty word.
+                return f.apply(Vectorizer.BagOfWords.from(next));
+            }
+            return f.apply(session.words);
+        }
+    }
+
+    // Returns the session with the given id, starting a new one if there is none or it expired,
+    // and sweeps out expired and excess sessions when due.
+    private Session session(String id) {
+        long now = System.nanoTime();
+        Session session = sessions.get(id);
+        if (session == null || now - session.lastUsed > idle) {
+            session = sessions.compute(id, (k, s) -> s == null || now - s.lastUsed > idle
+                                                     ? new Session(now) : s);
+        }
+        session.lastUsed = now;
+        if (unswept.incrementAndGet() >= SWEEP_INTERVAL || sessions.size() > capacity) {
+            sweep(now);
+        }
+        return session;
+    }
+
+    // Drops the sessions that expired at the given time and, if there are more sessions than the
+    // capacity, the least recently used ones. Returns without waiting if another thread is already
+    // sweeping. Excess sessions are dropped down to a little under the capacity so that the sort
+    // is amortized over the sessions started before the next sweep over the capacity.
+    private void sweep(long now) {
+        if (!sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            unswept.set(0);
+            sessions.values().removeIf(session -> now - session.lastUsed > idle);
+            int excess = sessions.size() - (capacity - capacity / 16);
+            if (excess > 0 && sessions.size() > capacity) {
+                // Sessions in use keep updating lastUsed, so sort a copy of the times and drop the
+                // sessions last used no later than the cutoff.
+                long[] used = sessions.values().stream().mapToLong(s -> s.lastUsed).toArray();
+                Arrays.sort(used);
+                long cutoff = used[Math.min(excess, used.length) - 1];
+                sessions.values().removeIf(session -> session.lastUsed <= cutoff);
+            }
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    // Returns the length of the longest common prefix of the given strings.
+    private static int commonPrefix(String a, String b) {
+        int n = Math.min(a.length(), b.length());
+        for (int i = 0; i < n; i += 1) {
+            if (a.charAt(i) != b.charAt(i)) {
+                return i;
+            }
+        }
+        return n;
+    }
+
+    // Returns true if the given character separates tokens, as matched by \s in the tokenizer.
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    // Returns the number of sessions currently kept.
+    public int size() {
+        return sessions.size();
+    }
+
+    public String toString() {
+        return String.format(Locale.ROOT, "{\"sessions\": %d, \"updates\": %d, \"processed\": %d, "
+                             + "\"total\": %d}", sessions.size(), updates.sum(), processed.sum(),
+                             total.sum());
+    }
+}
@@ -0,0 +1,60 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+
+public class SessionsTest {
+
+    // Returns the word counts of the given words, which must not be used after returning.
+    private static Map<String, Integer> counts(Vectorizer.BagOfWords words) {
+        Map<String, Integer> result = new TreeMap<>();
+        for (String word : words.unique()) {
+            result.put(word, words.tf(word));
+        }
+        return result;
+    }
+
+    @Test
+    @DisplayName("each update counts the same words as processing the whole text")
+    public void testUpdateMatchesWholeText() {
+        Sessions sessions = new Sessions(16, 1 << 16, 60000);
+        String[] typed = {"Free", "Free prize", "Free prize!! Call", "Free prize!! Call now",
+                          "Free pri", "", "  ", "\"Quoted\" reply", "\"Quoted\" reply, thanks"};
+        for (String text : typed) {
+            Map<String, Integer> expected = counts(Vectorizer.BagOfWords.from(text));
+            assertEquals(expected, sessions.update("a", -1, text, SessionsTest::counts), text);
+        }
+        // Appending from an offset is the same as replacing the whole text.
+        sessions.update("b", -1, "Free prize", SessionsTest::counts);
+        assertEquals(counts(Vectorizer.BagOfWords.from("Free prize, call now")),
+                     sessions.update("b", 10, ", call now", SessionsTest::counts));
+    }
+
+    @Test
+    @DisplayName("an offset past the session text throws StaleOffsetException")
+    public void testStaleOffset() throws InterruptedException {
+        Sessions sessions = new Sessions(16, 1 << 16, 1);
+        sessions.update("a", -1, "Free prize", SessionsTest::counts);
+        Thread.sleep(5);
+        // The session expired, so it starts again from an empty text.
+        assertThrows(Sessions.StaleOffsetException.class,
+                     () -> sessions.update("a", 10, ", call now", SessionsTest::counts));
+        assertEquals(counts(Vectorizer.BagOfWords.from("Free prize, call now")),
+                     sessions.update("a", -1, "Free prize, call now", SessionsTest::counts));
+    }
+
+    @Test
+    @DisplayName("the least recently used session is dropped when there are too many")
+    public void testCapacity() {
+        Sessions sessions = new Sessions(2, 1 << 16, 60000);
+        sessions.update("a", -1, "one", SessionsTest::counts);
+        sessions.update("b", -1, "two", SessionsTest::counts);
+        sessions.update("a", -1, "one more", SessionsTest::counts);
+        sessions.update("c", -1, "three", SessionsTest::counts);
+        assertEquals(2, sessions.size());
+        assertEquals(counts(Vectorizer.BagOfWords.from("one more time")),
+                     sessions.update("a", 8, " time", SessionsTest::counts));
+        assertThrows(Sessions.StaleOffsetException.class,
+                     () -> sessions.update("b", 3, " again", SessionsTest::counts));
+    }
+}
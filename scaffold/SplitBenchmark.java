@@ -0,0 +1,89 @@
+import java.io.*;
+import java.util.*;
+import java.util.function.*;
+
+// Compares the training time and held-out accuracy of exact and approximate split searches.
+public class SplitBenchmark {
+    // Every FOLD-th data point is held out for testing.
+    private static final int FOLD = 5;
+    // Splitters with more data points than this use the quantile sketch in approximate modes.
+    private static final int MIN_SIZE_SKETCH = 1000;
+    // Seed for choosing samples so that every run grows the same trees.
+    private static final long SEED = 373;
+    // Number of times to repeat the exact split search for the root node.
+    private static final int ROOT_REPEATS = 5;
+
+    public static void main(String[] args) throws FileNotFoundException {
+        if (args.length == 0) {
+            throw new IllegalArgumentException("java SplitBenchmark [tsv file]...");
+        }
+        for (String filename : args) {
+            Dataset data = new Dataset(new File(filename));
+            boolean[] labels = data.labels;
+            String[] messages = data.messages;
+            int N = data.size();
+
+            int testSize = (N + FOLD - 1) / FOLD;
+            String[] trainMessages = new String[N - testSize];
+            boolean[] trainLabels = new boolean[N - testSize];
+            String[] testMessages = new String[testSize];
+            boolean[] testLabels = new boolean[testSize];
+            for (int i = 0; i < N; i += 1) {
+                if (i % FOLD == 0) {
+                    testMessages[i / FOLD] = messages[i];
+                    testLabels[i / FOLD] = labels[i];
+                } else {
+                    trainMessages[i - i / FOLD - 1] = messages[i];
+                    trainLabels[i - i / FOLD - 1] = labels[i];
+                }
+            }
+            Vectorizer vectorizer = new Vectorizer();
+            double[][] train = vectorizer.fitTransform(trainMessages);
+            double[][] test = vectorizer.transform(testMessages);
+
+            Map<String, Supplier<Splitter>> modes = new LinkedHashMap<>();
+            modes.put("exact", () -> new GiniSplitter(train, trainLabels));
+            for (int candidates : new int[]{256, 64, 16}) {
+                modes.put("sketch " + candidates, () -> new GiniSplitter(
+                    train, trainLabels, MIN_SIZE_SKETCH, candidates
+                ));
+            }
+            for (int sampleSize : new int[]{2000, 1000, 500}) {
+                modes.put("sample " + sampleSize, () -> new GiniSplitter(
+                    train, trainLabels, sampleSize, new Random(SEED)
+                ));
+            }
+            System.out.printf("%s: %d train, %d test, %d features%n",
+                              filename, train.length, test.length, train[0].length);
+
+            // Times the exact split search for the root node alone, which is where SIMD counting
+            // matters most. Run with and without --add-modules jdk.incubator.vector to compare.
+            GiniSplitter root = new GiniSplitter(train, trainLabels);
+            root.split();
+            long rootStart = System.nanoTime();
+            for (int r = 0; r < ROOT_REPEATS; r += 1) {
+                root.split();
+            }
+            System.out.printf("  root split %.3f s with %s counting%n",
+                              (System.nanoTime() - rootStart) / 1e9 / ROOT_REPEATS,
+                              GiniSplitter.counterName());
+            double exactSeconds = Double.NaN;
+            for (Map.Entry<String, Supplier<Splitter>> mode : modes.entrySet()) {
+                long start = System.nanoTime();
+                TextClassifier clf = new TextClassifier(vectorizer, mode.getValue().get());
+                double seconds = (System.nanoTime() - start) / 1e9;
+                if (Double.isNaN(exactSeconds)) {
+                    exactSeconds = seconds;
+                }
+                int correct = 0;
+                for (int i = 0; i < test.length; i += 1) {
+                    if (clf.classify(test[i]) == testLabels[i]) {
+                        correct += 1;
+                    }
+                }
+                System.out.printf("  %-11s %7.2f s  %5.2fx  accuracy %.4f%n", mode.getKey(),
+                                  seconds, exactSeconds / seconds, correct / (double) test.length);
+            }
+        }
+    }
+}
@@ -9,6 +9,12 @@ public interface Splitter {
     // Returns the number of data points in this splitter.
     public int size();
 
+    // Returns the total sample weight of data points in this splitter. Each data point has weight 1
+    // unless the splitter supports sample weights.
+    public default double weight() {
+        return size();
+    }
+
     // The index and threshold representing a split point, and the left and right splitters that
     // result from applying the split.
     public static class Result {
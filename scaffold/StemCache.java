@@ -0,0 +1,146 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+
+// Bounded, thread-safe memoization cache from words to their stems. Word frequencies follow Zipf's
+// law, so a few words account for most lookups while a long tail of rare words appears only once
+// or twice. Only frequent words are admitted: each miss is counted in a small count-min sketch, and
+// a word is cached once it has missed ADMIT times recently, so the tail of rare words never fills
+// the cache. The counts are halved every so many misses so that words which recur slowly over a
+// long time are not mistaken for frequent ones. Cached words are never evicted, since a stem never
+// changes and the head of the distribution stays the same, so once the cache is full it only
+// serves the words already in it.
+//
+// Nothing takes a lock. Lookups and admissions go through a ConcurrentHashMap, and the sketch is
+// updated without synchronization since a lost update only delays an admission. The cache may go
+// slightly over its capacity when threads admit words at the same time.
+public class StemCache {
+    private final int capacity;
+    private final Function<String, String> stemmer;
+    private final ConcurrentHashMap<String, String> stems;
+    // Two rows of saturating counters indexed by different hashes of the word. The estimated count
+    // of a word is the smaller of its two counters.
+    private final byte[] counts;
+    private final int mask;
+    // Number of misses until the counts are next halved, and true while a thread is halving them.
+    private final AtomicInteger untilAging;
+    private final AtomicBoolean aging;
+    private final LongAdder hits;
+    private final LongAdder misses;
+
+    // The number of misses after which a word is admitted.
+    private static final int ADMIT = 3;
+    // The largest count. Lower values let formerly frequent words decay sooner.
+    private static final int MAX_COUNT = 15;
+
+    // Constructs a new empty StemCache that holds about the given number of words, computing stems
+    // with the given function. A capacity of 0 disables caching.
+    public StemCache(int capacity, Function<String, String> stemmer) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity must be non-negative");
+        }
+        int width = Integer.highestOneBit(Math.max(1, capacity) * 2 - 1);
+        this.capacity = capacity;
+        this.stemmer = stemmer;
+        this.stems = new ConcurrentHashMap<>();
+        this.counts = new byte[capacity == 0 ? 0 : 2 * width];
+        this.mask = width - 1;
+        this.untilAging = new AtomicInteger(window());
+        this.aging = new AtomicBoolean();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+    }
+
+    // Returns the stem of the given word, computing it if it is not cached and caching it if the
+    // word is frequent.
+    public String get(String word) {
+        if (capacity == 0) {
+            misses.increment();
+            return stemmer.apply(word);
+        }
+        String stem = stems.get(word);
+        if (stem != null) {
+            hits.increment();
+            return stem;
+        }
+        misses.increment();
+        stem = stemmer.apply(word);
+        if (stems.size() < capacity && count(word.hashCode()) >= ADMIT) {
+            stems.putIfAbsent(word, stem);
+        }
+        if (untilAging.decrementAndGet() <= 0) {
+            age();
+        }
+        return stem;
+    }
+
+    // Counts a miss of the word with the given hash and returns its estimated count.
+    private int count(int hash) {
+        int first = index(hash, 0);
+        int second = index(hash, 1);
+        int a = counts[first];
+        int b = counts[second];
+        if (a < MAX_COUNT) {
+            counts[first] = (byte) (a + 1);
+        }
+        if (b < MAX_COUNT) {
+            counts[second] = (byte) (b + 1);
+        }
+        return Math.min(a, b) + 1;
+    }
+
+    // Returns the index of the counter for the given hash in the given row.
+    private int index(int hash, int row) {
+        int h = row == 0 ? hash : hash * 0x9E3779B9;
+        return row * (mask + 1) + ((h ^ (h >>> 16)) & mask);
+    }
+
+    // Returns the number of misses between halvings of the counts.
+    private int window() {
+        return Math.max(1, capacity) * 4;
+    }
+
+    // Halves every count. Returns without waiting if another thread is already doing so.
+    private void age() {
+        if (!aging.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            untilAging.set(window());
+            for (int i = 0; i < counts.length; i += 1) {
+                counts[i] >>= 1;
+            }
+        } finally {
+            aging.set(false);
+        }
+    }
+
+    // Returns the number of lookups that found a cached stem.
+    public long hits() {
+        return hits.sum();
+    }
+
+    // Returns the number of lookups that computed a stem.
+    public long misses() {
+        return misses.sum();
+    }
+
+    // Returns the proportion of lookups that found a cached stem, or 0 if there were no lookups.
+    public double hitRate() {
+        long hits = hits();
+        long total = hits + misses();
+        return total == 0 ? 0.0 : hits / (double) total;
+    }
+
+    // Returns the number of cached words.
+    public int size() {
+        return stems.size();
+    }
+
+    public String toString() {
+        return String.format(Locale.ROOT,
+                             "{\"size\": %d, \"hits\": %d, \"misses\": %d, \"hitRate\": %.4f}",
+                             size(), hits(), misses(), hitRate());
+    }
+}
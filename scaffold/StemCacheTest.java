@@ -0,0 +1,43 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StemCacheTest {
+
+    @Test
+    @DisplayName("only words looked up repeatedly are cached")
+    public void testAdmission() {
+        StemCache cache = new StemCache(16, String::toUpperCase);
+        assertEquals("RUNNING", cache.get("running"));
+        assertEquals("RUNNING", cache.get("running"));
+        assertEquals(0, cache.size());
+        assertEquals("RUNNING", cache.get("running"));
+        assertEquals(1, cache.size());
+        assertEquals("RUNNING", cache.get("running"));
+        assertEquals(1, cache.hits());
+        assertEquals(3, cache.misses());
+    }
+
+    @Test
+    @DisplayName("a flood of rare words neither overfills the cache nor evicts frequent words")
+    public void testZipfian() {
+        StemCache cache = new StemCache(64, String::toUpperCase);
+        for (int i = 0; i < 100000; i += 1) {
+            // Every other lookup is one of a few frequent words and the rest are all distinct.
+            String word = i % 2 == 0 ? "word" + i % 10 : "rare" + i;
+            assertEquals(word.toUpperCase(), cache.get(word));
+            assertTrue(cache.size() <= 64);
+        }
+        assertTrue(cache.hitRate() > 0.49, cache.toString());
+    }
+
+    @Test
+    @DisplayName("a capacity of 0 never caches")
+    public void testDisabled() {
+        StemCache cache = new StemCache(0, String::toUpperCase);
+        for (int i = 0; i < 10; i += 1) {
+            assertEquals("RUNNING", cache.get("running"));
+        }
+        assertEquals(0, cache.size());
+        assertEquals(0.0, cache.hitRate());
+    }
+}
@@ -0,0 +1,247 @@
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+
+// Classifies a stream of messages, one per line, by passing them through text processing,
+// vectorizing, and tree evaluation stages that run concurrently and are connected by bounded
+// queues. Predictions are written in input order while holding at most a fixed number of messages
+// in memory.
+public class StreamingClassifier {
+    private final Vectorizer vectorizer;
+    private final TextClassifier clf;
+    private final int capacity;
+    private final int threads;
+
+    // The default maximum number of messages in the pipeline at once.
+    private static final int DEFAULT_CAPACITY = 1024;
+    // Sequence number marking the end of the stream.
+    private static final long END = -1;
+
+    // Constructs a new StreamingClassifier with the given fitted vectorizer and a tree grown by the
+    // given splitter.
+    public StreamingClassifier(Vectorizer vectorizer, Splitter splitter) {
+        this(vectorizer, splitter, DEFAULT_CAPACITY, Runtime.getRuntime().availableProcessors());
+    }
+
+    // Constructs a new StreamingClassifier with the given fitted vectorizer, a tree grown by the
+    // given splitter, the maximum number of messages in the pipeline at once, and the thread count.
+    public StreamingClassifier(Vectorizer vectorizer, Splitter splitter, int capacity,
+                               int threads) {
+        if (capacity < 1 || threads < 1) {
+            throw new IllegalArgumentException("capacity and threads must be positive");
+        }
+        this.vectorizer = vectorizer;
+        this.clf = new TextClassifier(vectorizer, new RecordingSplitter(splitter).grow());
+        this.capacity = capacity;
+        this.threads = threads;
+    }
+
+    // Classifies each line of the given input and writes one prediction per line to the given
+    // output in input order. Prints throughput and backpressure statistics to the given report.
+    public void classify(BufferedReader input, PrintWriter output, PrintStream report)
+            throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Semaphore permits = new Semaphore(capacity);
+        BlockingQueue<Item<String>> texts = new ArrayBlockingQueue<>(capacity);
+        BlockingQueue<Item<Vectorizer.BagOfWords>> documents = new ArrayBlockingQueue<>(capacity);
+        BlockingQueue<Item<double[]>> vectors = new ArrayBlockingQueue<>(capacity);
+        BlockingQueue<Item<Boolean>> predictions = new ArrayBlockingQueue<>(capacity);
+        // The first exception thrown by any stage or the writer. Once set, reading stops and the
+        // remaining items pass through the stages unprocessed so that the end still reaches the
+        // writer and every thread finishes.
+        AtomicReference<Exception> error = new AtomicReference<>();
+        List<Stage<?, ?>> stages = List.of(
+            new Stage<>("process", texts, documents, Vectorizer.BagOfWords::from,
+                        Math.max(1, threads - 1), error),
+            new Stage<>("vectorize", documents, vectors, vectorizer::transform,
+                        Math.max(1, threads / 4), error),
+            new Stage<>("evaluate", vectors, predictions, clf::classify, 1, error)
+        );
+        for (Stage<?, ?> stage : stages) {
+            stage.start();
+        }
+
+        Thread writer = new Thread(() -> {
+            Map<Long, Boolean> pending = new HashMap<>();
+            long next = 0;
+            try {
+                while (true) {
+                    Item<Boolean> item = predictions.take();
+                    if (item.seq == END) {
+                        break;
+                    }
+                    pending.put(item.seq, item.value);
+                    while (pending.containsKey(next)) {
+                        Boolean prediction = pending.remove(next);
+                        if (error.get() == null) {
+                            output.println(prediction);
+                        }
+                        permits.release();
+                        next += 1;
+                    }
+                }
+            } catch (InterruptedException e) {
+                error.compareAndSet(null, e);
+            }
+            output.flush();
+        }, "writer");
+        writer.start();
+
+        long count = 0;
+        long blocked = 0;
+        long blockedNanos = 0;
+        String line;
+        while (error.get() == null && (line = input.readLine()) != null) {
+            if (!permits.tryAcquire()) {
+                long wait = System.nanoTime();
+                permits.acquire();
+                blocked += 1;
+                blockedNanos += System.nanoTime() - wait;
+            }
+            texts.put(new Item<>(count, line));
+            count += 1;
+        }
+        texts.put(new Item<>(END, null));
+        writer.join();
+        if (error.get() != null) {
+            throw new IllegalStateException(error.get());
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        report.printf("%d documents in %.2f s (%.0f documents/s)%n", count, seconds,
+                      count / seconds);
+        report.printf("read      waited for the pipeline %d times (%.0f ms)%n", blocked,
+                      blockedNanos / 1e6);
+        for (Stage<?, ?> stage : stages) {
+            report.println(stage);
+        }
+    }
+
+    // A value tagged with its position in the input.
+    private static class Item<T> {
+        public final long seq;
+        public final T value;
+
+        // Constructs a new Item with the given sequence number and value.
+        public Item(long seq, T value) {
+            this.seq = seq;
+            this.value = value;
+        }
+    }
+
+    // A pipeline stage whose workers apply a function to each item in the input queue and put the
+    // result in the output queue, counting how often and how long they wait for space downstream.
+    private static class Stage<T, R> {
+        private final String name;
+        private final BlockingQueue<Item<T>> input;
+        private final BlockingQueue<Item<R>> output;
+        private final Function<T, R> function;
+        private final AtomicReference<Exception> error;
+        private final Thread[] workers;
+        private final AtomicInteger running;
+        private final LongAdder processed;
+        private final LongAdder blocked;
+        private final LongAdder blockedNanos;
+        private final LongAdder idleNanos;
+
+        // Constructs a new Stage with the given name, queues, function, and number of workers that
+        // records the first exception thrown by the function in the given reference.
+        public Stage(String name, BlockingQueue<Item<T>> input, BlockingQueue<Item<R>> output,
+                     Function<T, R> function, int threads, AtomicReference<Exception> error) {
+            this.name = name;
+            this.input = input;
+            this.output = output;
+            this.function = function;
+            this.error = error;
+            this.workers = new Thread[threads];
+            this.running = new AtomicInteger(threads);
+            this.processed = new LongAdder();
+            this.blocked = new LongAdder();
+            this.blockedNanos = new LongAdder();
+            this.idleNanos = new LongAdder();
+        }
+
+        // Starts the workers for this stage.
+        public void start() {
+            for (int i = 0; i < workers.length; i += 1) {
+                workers[i] = new Thread(this::run, name + "-" + i);
+                workers[i].setDaemon(true);
+                workers[i].start();
+            }
+        }
+
+        // Processes items until the end of the stream, then passes the end on to the next stage
+        // once every worker in this stage has finished. After any stage fails, items are passed on
+        // without a value instead of being processed.
+        private void run() {
+            try {
+                while (true) {
+                    long start = System.nanoTime();
+                    Item<T> item = input.take();
+                    idleNanos.add(System.nanoTime() - start);
+                    if (item.seq == END) {
+                        input.put(item); // Let the other workers see the end too
+                        break;
+                    }
+                    R value = null;
+                    if (error.get() == null) {
+                        try {
+                            value = function.apply(item.value);
+                            processed.increment();
+                        } catch (RuntimeException e) {
+                            error.compareAndSet(null, e);
+                        }
+                    }
+                    offer(new Item<>(item.seq, value));
+                }
+                if (running.decrementAndGet() == 0) {
+                    output.put(new Item<>(END, null));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // Puts the given item in the output queue, recording any time spent waiting for space.
+        private void offer(Item<R> item) throws InterruptedException {
+            if (!output.offer(item)) {
+                long start = System.nanoTime();
+                output.put(item);
+                blocked.increment();
+                blockedNanos.add(System.nanoTime() - start);
+            }
+        }
+
+        // Returns a summary of the work done by this stage and the backpressure it experienced.
+        public String toString() {
+            return String.format(
+                "%-9s %2d threads: %d documents, blocked %d times (%.0f ms), idle %.0f ms",
+                name, workers.length, processed.sum(), blocked.sum(), blockedNanos.sum() / 1e6,
+                idleNanos.sum() / 1e6
+            );
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length != 1 && args.length != 2) {
+            throw new IllegalArgumentException(
+                "java StreamingClassifier [tsv file] [messages file]"
+            );
+        }
+        Dataset data = new Dataset(new File(args[0]));
+        Vectorizer vectorizer = new Vectorizer();
+        double[][] matrix = vectorizer.fitTransform(TokenCorpus.load(data.messages));
+        Splitter splitter = new GiniSplitter(matrix, data.labels);
+        StreamingClassifier clf = new StreamingClassifier(vectorizer, splitter);
+        InputStream in = args.length == 2 ? new FileInputStream(args[1]) : System.in;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            PrintWriter writer = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+            clf.classify(reader, writer, System.err);
+        }
+    }
+}
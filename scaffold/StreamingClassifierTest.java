@@ -0,0 +1,54 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.time.*;
+import java.util.*;
+
+public class StreamingClassifierTest {
+
+    @Test
+    @DisplayName("predictions are written in input order")
+    public void testClassifyInOrder() throws IOException {
+        Dataset data = new Dataset(new File("spam.tsv"));
+        String[] messages = Arrays.copyOf(data.messages, 1000);
+        Vectorizer vectorizer = new Vectorizer();
+        double[][] matrix = vectorizer.fitTransform(messages);
+        boolean[] labels = Arrays.copyOf(data.labels, messages.length);
+        TextClassifier expected = new TextClassifier(vectorizer, new GiniSplitter(matrix, labels));
+        StreamingClassifier clf = new StreamingClassifier(
+            vectorizer, new GiniSplitter(matrix, labels), 16, 4
+        );
+
+        StringWriter output = new StringWriter();
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> clf.classify(
+            new BufferedReader(new StringReader(String.join("\n", messages))),
+            new PrintWriter(output), new PrintStream(new ByteArrayOutputStream())
+        ));
+        String[] lines = output.toString().split("\n");
+        assertEquals(messages.length, lines.length);
+        for (int i = 0; i < messages.length; i += 1) {
+            assertEquals(Boolean.toString(expected.classify(messages[i])), lines[i]);
+        }
+    }
+
+    @Test
+    @DisplayName("an exception in a stage ends the stream and is rethrown")
+    public void testStageFailure() {
+        String[] messages = {"free prize", "call me later", "see you soon"};
+        Vectorizer fitted = new Vectorizer(0.0, 1.0, Vectorizer.K1, Vectorizer.B);
+        double[][] matrix = fitted.fitTransform(messages);
+        // An unfitted vectorizer throws IllegalStateException from the vectorize stage.
+        StreamingClassifier clf = new StreamingClassifier(
+            new Vectorizer(), new GiniSplitter(matrix, new boolean[]{true, false, false}), 2, 2
+        );
+        String input = String.join("\n", Collections.nCopies(1000, "free prize"));
+        IllegalStateException e = assertTimeoutPreemptively(Duration.ofSeconds(30), () ->
+            assertThrows(IllegalStateException.class, () -> clf.classify(
+                new BufferedReader(new StringReader(input)), new PrintWriter(new StringWriter()),
+                new PrintStream(new ByteArrayOutputStream())
+            ))
+        );
+        assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+}
@@ -0,0 +1,130 @@
+import java.io.*;
+import java.util.*;
+
+// Generates deterministic synthetic labeled texts in the tsv format of the bundled datasets, for
+// testing how training and classification scale beyond their size. Words are drawn from a Zipfian
+// distribution over a fixed vocabulary of made-up words, like the words of natural language. Texts
+// labeled true also draw some of their words from a small set of topic words that are otherwise
+// rare, so that the labels can be learned.
+public class SyntheticData {
+    private final long seed;
+    private final double meanLength;
+    private final double positiveRate;
+    private final String[] words;
+    private final double[] cumulative;
+    private final double[] topicCumulative;
+
+    // Number of distinct words in texts.
+    private static final int VOCABULARY = 50000;
+    // Exponent of the Zipfian distribution: the i-th most frequent word has frequency 1 / i^s.
+    private static final double EXPONENT = 1.1;
+    // Number of topic words, which are drawn from the middle of the frequency ranking.
+    private static final int TOPICS = 200;
+    // Fraction of words in texts labeled true, and labeled false, that are topic words.
+    private static final double TOPIC_RATE = 0.15;
+    private static final double NOISE_RATE = 0.01;
+    // Syllables that make up the words.
+    private static final String CONSONANTS = "bdfgklmnprstvz";
+    private static final String VOWELS = "aeiou";
+
+    // Constructs a new SyntheticData with the given seed, with 20 words per text on average and a
+    // quarter of texts labeled true.
+    public SyntheticData(long seed) {
+        this(seed, 20, 0.25);
+    }
+
+    // Constructs a new SyntheticData with the given seed, mean number of words per text, and
+    // fraction of texts labeled true. Text lengths are exponentially distributed.
+    public SyntheticData(long seed, double meanLength, double positiveRate) {
+        if (meanLength < 1 || positiveRate < 0 || positiveRate > 1) {
+            throw new IllegalArgumentException(
+                "meanLength must be at least 1 and positiveRate between 0 and 1"
+            );
+        }
+        this.seed = seed;
+        this.meanLength = meanLength;
+        this.positiveRate = positiveRate;
+        this.words = new String[VOCABULARY];
+        for (int i = 0; i < VOCABULARY; i += 1) {
+            words[i] = word(i);
+        }
+        this.cumulative = zipf(VOCABULARY);
+        this.topicCumulative = zipf(TOPICS);
+    }
+
+    // Returns the made-up word with the given index, made of at least two syllables.
+    private static String word(int index) {
+        int syllables = CONSONANTS.length() * VOWELS.length();
+        StringBuilder result = new StringBuilder();
+        for (int n = index + syllables; n > 0; n /= syllables) {
+            result.append(CONSONANTS.charAt(n % syllables / VOWELS.length()));
+            result.append(VOWELS.charAt(n % VOWELS.length()));
+        }
+        return result.toString();
+    }
+
+    // Returns the cumulative Zipfian distribution over the given number of ranks.
+    private static double[] zipf(int size) {
+        double[] result = new double[size];
+        double total = 0.0;
+        for (int i = 0; i < size; i += 1) {
+            total += 1.0 / Math.pow(i + 1, EXPONENT);
+            result[i] = total;
+        }
+        for (int i = 0; i < size; i += 1) {
+            result[i] /= total;
+        }
+        return result;
+    }
+
+    // Returns a random rank from the given cumulative distribution.
+    private static int sample(double[] cumulative, Random random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        return Math.min(index < 0 ? -index - 1 : index, cumulative.length - 1);
+    }
+
+    // Writes a header and the given number of labeled texts to the given output. The same seed and
+    // parameters always write the same texts, and fewer rows write a prefix of more rows.
+    public void write(PrintStream output, int rows) {
+        Random random = new Random(seed);
+        StringBuilder line = new StringBuilder();
+        output.println("label\tmessage");
+        for (int i = 0; i < rows; i += 1) {
+            boolean label = random.nextDouble() < positiveRate;
+            double topicRate = label ? TOPIC_RATE : NOISE_RATE;
+            int length = 1 + (int) (-(meanLength - 1) * Math.log(1.0 - random.nextDouble()));
+            line.setLength(0);
+            line.append(label ? "True" : "False").append('\t');
+            for (int j = 0; j < length; j += 1) {
+                int rank;
+                if (random.nextDouble() < topicRate) {
+                    rank = VOCABULARY / 2 + sample(topicCumulative, random);
+                } else {
+                    rank = sample(cumulative, random);
+                }
+                if (j > 0) {
+                    line.append(' ');
+                }
+                line.append(words[rank]);
+            }
+            output.println(line);
+        }
+    }
+
+    public static void main(String[] args) throws FileNotFoundException {
+        if (args.length < 2) {
+            throw new IllegalArgumentException(
+                "java SyntheticData [rows] [tsv file] [mean length] [positive rate] [seed]"
+            );
+        }
+        int rows = Integer.parseInt(args[0]);
+        double meanLength = args.length > 2 ? Double.parseDouble(args[2]) : 20;
+        double positiveRate = args.length > 3 ? Double.parseDouble(args[3]) : 0.25;
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : 373;
+        SyntheticData data = new SyntheticData(seed, meanLength, positiveRate);
+        try (PrintStream output = new PrintStream(new BufferedOutputStream(
+                new FileOutputStream(args[1]), 1 << 16))) {
+            data.write(output, rows);
+        }
+    }
+}
@@ -55,7 +55,10 @@ public class TextClassifier {
         }
 
         Vectorizer vectorizer = new Vectorizer();
-        Splitter splitter = new GiniSplitter(vectorizer.fitTransform(messages), labels);
+        double[][] matrix = vectorizer.fitTransform(TokenCorpus.load(messages));
+        // Grow the tree before building the classifier so that each node's data is released as soon
+        // as its children are built, bounding peak memory by the size of the design matrix.
+        Splitter splitter = new RecordingSplitter(new GiniSplitter(matrix, labels)).grow();
         TextClassifier clf = new TextClassifier(vectorizer, splitter);
         clf.prune(10);
         clf.print();
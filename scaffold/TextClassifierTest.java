@@ -4,6 +4,7 @@ import org.junit.jupiter.params.provider.*;
 import static org.junit.jupiter.api.Assertions.*;
 
 import java.io.*;
+import java.lang.management.*;
 import java.util.*;
 
 @TestMethodOrder(MethodOrderer.OrderAnnotation.class)
@@ -43,7 +44,8 @@ public class TextClassifierTest {
                 throw new ExceptionInInitializerError();
             }
             Vectorizer vectorizer = new Vectorizer();
-            Splitter splitter = new GiniSplitter(vectorizer.fitTransform(this.messages), labels);
+            double[][] matrix = vectorizer.fitTransform(TokenCorpus.load(this.messages));
+            Splitter splitter = new GiniSplitter(matrix, labels);
             this.clf = new TextClassifier(vectorizer, splitter);
             this.filename = filename;
         }
@@ -124,6 +126,53 @@ public class TextClassifierTest {
         assertEquals(expected, b.toString());
     }
 
+    @Test
+    @DisplayName("grow without the design matrix")
+    @Order(5)
+    public void testGrowPeakHeap() throws IOException {
+        Dataset data = new Dataset(new File("toxic.tsv"));
+        Vectorizer vectorizer = new Vectorizer();
+        double[][] matrix = vectorizer.fitTransform(data.messages);
+        long matrixBytes = 0;
+        for (double[] row : matrix) {
+            matrixBytes += 16 + 8L * row.length;
+        }
+        RecordingSplitter tree = new RecordingSplitter(new GiniSplitter(matrix, data.labels));
+        matrix = null;
+
+        // The peak of each heap pool may be reached at different times, so their sum is an upper
+        // bound on the true peak.
+        System.gc();
+        List<MemoryPoolMXBean> pools = new ArrayList<>();
+        long before = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                before += pool.getUsage().getUsed();
+                pools.add(pool);
+            }
+        }
+        tree.grow();
+        long peak = 0;
+        for (MemoryPoolMXBean pool : pools) {
+            peak += pool.getPeakUsage().getUsed();
+        }
+        assertTrue(peak - before < matrixBytes, String.format(
+            "grow used %d MB over a %d MB design matrix", (peak - before) >> 20, matrixBytes >> 20
+        ));
+
+        // The grown tree is the same as one built directly from the splitter.
+        Scanner input = new Scanner(new File("toxic.tsv.test1.txt"));
+        String expected = input.useDelimiter("\\A").next();
+        TextClassifier clf = new TextClassifier(vectorizer, tree);
+        StringBuilder builder = new StringBuilder();
+        for (String text : data.messages) {
+            builder.append(clf.classify(text));
+            builder.append('\n');
+        }
+        assertEquals(expected, builder.toString());
+    }
+
     // Dump solution class output to text files.
     public static void main(String[] args) throws FileNotFoundException {
         for (Source src : Source.values()) {
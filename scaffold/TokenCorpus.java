@@ -0,0 +1,260 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.security.*;
+import java.util.*;
+
+// Tokenized and stemmed texts stored as a term dictionary plus term-id arrays for each text. A
+// corpus can be cached on disk keyed by the hash of the texts and the tokenizer version, so fitting
+// a model to the same file again skips text processing entirely.
+public class TokenCorpus {
+    // Each distinct term, in order of first occurrence in the texts.
+    public final String[] terms;
+    // The ids of the distinct terms in each text, in the order that BagOfWords.unique returns them.
+    public final int[][] ids;
+    // The term-frequency count for each id in each text.
+    public final int[][] counts;
+    // The total number of terms in each text.
+    public final int[] sizes;
+
+    // Identifies token cache files.
+    private static final int MAGIC = 0x544f4b53;
+    // Version of the token cache file layout.
+    private static final int FORMAT_VERSION = 1;
+    // Directory for token cache files.
+    private static final Path CACHE = System.getProperty("tokens.cache") != null
+            ? Paths.get(System.getProperty("tokens.cache"))
+            : Paths.get(System.getProperty("java.io.tmpdir"), "text-classifier-tokens");
+    // Maximum total size of the token cache files in bytes, set by the tokens.cache.bytes property.
+    private static final long CACHE_BYTES = Long.getLong("tokens.cache.bytes", 256L << 20);
+
+    // Constructs a new TokenCorpus with the given terms, term ids, counts, and sizes.
+    private TokenCorpus(String[] terms, int[][] ids, int[][] counts, int[] sizes) {
+        this.terms = terms;
+        this.ids = ids;
+        this.counts = counts;
+        this.sizes = sizes;
+    }
+
+    // Returns a new TokenCorpus after tokenizing and stemming the given texts.
+    public static TokenCorpus from(String... texts) {
+        Vectorizer.BagOfWords[] documents = Arrays.stream(texts)
+                                                  .parallel()
+                                                  .map(Vectorizer.BagOfWords::from)
+                                                  .toArray(Vectorizer.BagOfWords[]::new);
+        Map<String, Integer> dictionary = new HashMap<>();
+        List<String> terms = new ArrayList<>();
+        int[][] ids = new int[texts.length][];
+        int[][] counts = new int[texts.length][];
+        int[] sizes = new int[texts.length];
+        for (int i = 0; i < documents.length; i += 1) {
+            Set<String> unique = documents[i].unique();
+            ids[i] = new int[unique.size()];
+            counts[i] = new int[unique.size()];
+            sizes[i] = documents[i].size();
+            int k = 0;
+            for (String term : unique) {
+                Integer id = dictionary.putIfAbsent(term, terms.size());
+                if (id == null) {
+                    id = terms.size();
+                    terms.add(term);
+                }
+                ids[i][k] = id;
+                counts[i][k] = documents[i].tf(term);
+                k += 1;
+            }
+        }
+        return new TokenCorpus(terms.toArray(new String[0]), ids, counts, sizes);
+    }
+
+    // Returns the TokenCorpus for the given texts. The corpus is read from the cache if the same
+    // texts were processed before with the same tokenizer version, and otherwise processed and
+    // written to the cache, evicting the least recently used files beyond CACHE_BYTES. A missing or
+    // unusable cache only costs the processing time.
+    public static TokenCorpus load(String... texts) {
+        return load(CACHE, texts);
+    }
+
+    // Returns the TokenCorpus for the given texts as by load(texts), in the given cache directory.
+    static TokenCorpus load(Path cache, String... texts) {
+        byte[] hash = hash(texts);
+        StringBuilder name = new StringBuilder();
+        for (byte x : hash) {
+            name.append(String.format("%02x", x));
+        }
+        Path path = cache.resolve(name + ".v" + Vectorizer.TOKENIZER_VERSION + ".tokens");
+        if (Files.exists(path)) {
+            try {
+                TokenCorpus corpus = read(path, hash);
+                if (corpus.sizes.length == texts.length) {
+                    FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+                    Files.setLastModifiedTime(path, now);
+                    return corpus;
+                }
+            } catch (IOException e) {
+                // Rebuild a stale or damaged cache file.
+            }
+        }
+        TokenCorpus corpus = from(texts);
+        Path temp = null;
+        try {
+            // Write to a temporary file first so that concurrent readers never see a partial file.
+            Files.createDirectories(cache);
+            temp = Files.createTempFile(cache, name.toString(), ".tmp");
+            corpus.write(temp, hash);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            evict(cache, path);
+        } catch (IOException e) {
+            // Continue without caching if the cache directory is not writable.
+            try {
+                if (temp != null) {
+                    Files.deleteIfExists(temp);
+                }
+            } catch (IOException ignored) {
+            }
+        }
+        return corpus;
+    }
+
+    // Deletes the least recently used token cache files, other than the given file, until the files
+    // in the given cache directory total at most CACHE_BYTES. Files that another process deletes or
+    // replaces first are skipped.
+    private static void evict(Path cache, Path keep) throws IOException {
+        List<Path> files = new ArrayList<>();
+        Map<Path, FileTime> used = new HashMap<>();
+        Map<Path, Long> sizes = new HashMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(cache, "*.tokens")) {
+            for (Path file : stream) {
+                try {
+                    used.put(file, Files.getLastModifiedTime(file));
+                    sizes.put(file, Files.size(file));
+                    files.add(file);
+                } catch (IOException e) {
+                    // Already removed.
+                }
+            }
+        }
+        // Most recently used first, always keeping the given file.
+        files.sort((a, b) -> a.equals(keep) ? -1 : b.equals(keep) ? 1
+                             : used.get(b).compareTo(used.get(a)));
+        long total = 0;
+        for (Path file : files) {
+            total += sizes.get(file);
+            if (total > CACHE_BYTES && !file.equals(keep)) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    // Returns the number of texts in this corpus.
+    public int size() {
+        return sizes.length;
+    }
+
+    // Returns the SHA-256 hash of the given texts. Hashing the texts rather than the file they were
+    // read from keeps the cache correct even if the file changes after it was read.
+    private static byte[] hash(String[] texts) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (String text : texts) {
+            digest.update(text.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+        }
+        return digest.digest();
+    }
+
+    // Writes this corpus and the given source hash to the given file. Integers are written as
+    // variable-length quantities since most term ids and counts are small.
+    private void write(Path path, byte[] hash) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeInt(Vectorizer.TOKENIZER_VERSION);
+            output.write(hash);
+            writeVarInt(output, terms.length);
+            for (String term : terms) {
+                byte[] bytes = term.getBytes(StandardCharsets.UTF_8);
+                writeVarInt(output, bytes.length);
+                output.write(bytes);
+            }
+            writeVarInt(output, sizes.length);
+            for (int i = 0; i < sizes.length; i += 1) {
+                writeVarInt(output, sizes[i]);
+                writeVarInt(output, ids[i].length);
+                for (int k = 0; k < ids[i].length; k += 1) {
+                    writeVarInt(output, ids[i][k]);
+                    writeVarInt(output, counts[i][k]);
+                }
+            }
+        }
+    }
+
+    // Returns the corpus stored in the given file, which must have been written from a source with
+    // the given hash by the current tokenizer version.
+    private static TokenCorpus read(Path path, byte[] hash) throws IOException {
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            byte[] source = new byte[hash.length];
+            if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION
+                    || input.readInt() != Vectorizer.TOKENIZER_VERSION) {
+                throw new IOException("unsupported token cache file");
+            }
+            input.readFully(source);
+            if (!Arrays.equals(source, hash)) {
+                throw new IOException("token cache file is for a different source");
+            }
+            String[] terms = new String[readVarInt(input)];
+            for (int t = 0; t < terms.length; t += 1) {
+                byte[] bytes = new byte[readVarInt(input)];
+                input.readFully(bytes);
+                terms[t] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            int N = readVarInt(input);
+            int[][] ids = new int[N][];
+            int[][] counts = new int[N][];
+            int[] sizes = new int[N];
+            for (int i = 0; i < N; i += 1) {
+                sizes[i] = readVarInt(input);
+                ids[i] = new int[readVarInt(input)];
+                counts[i] = new int[ids[i].length];
+                for (int k = 0; k < ids[i].length; k += 1) {
+                    ids[i][k] = readVarInt(input);
+                    counts[i][k] = readVarInt(input);
+                    if (ids[i][k] >= terms.length) {
+                        throw new IOException("token cache file is corrupt");
+                    }
+                }
+            }
+            return new TokenCorpus(terms, ids, counts, sizes);
+        }
+    }
+
+    // Writes the given non-negative integer 7 bits at a time, low bits first.
+    private static void writeVarInt(DataOutputStream output, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            output.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte(value);
+    }
+
+    // Reads an integer written by writeVarInt.
+    private static int readVarInt(DataInputStream input) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = input.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("token cache file is corrupt");
+    }
+}
@@ -0,0 +1,71 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.util.*;
+
+public class TokenCorpusTest {
+    private static Path cache;
+
+    @BeforeAll
+    public static void createCache() throws IOException {
+        cache = Files.createTempDirectory("tokens");
+    }
+
+    @AfterAll
+    public static void deleteCache() throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(cache)) {
+            for (Path file : stream) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(cache);
+    }
+
+    // Returns the token cache files in the cache directory.
+    private static List<Path> files() throws IOException {
+        List<Path> result = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(cache, "*.tokens")) {
+            for (Path file : stream) {
+                result.add(file);
+            }
+        }
+        return result;
+    }
+
+    @Test
+    @DisplayName("a cold and a warm load fit the same vectorizer and matrix as the texts")
+    public void testColdAndWarm() throws IOException {
+        String[] messages = new Dataset(new File("spam.tsv")).messages;
+        TokenCorpus cold = TokenCorpus.load(cache, messages);
+        List<Path> written = files();
+        assertEquals(1, written.size());
+        Object fileKey = Files.readAttributes(written.get(0), BasicFileAttributes.class).fileKey();
+
+        TokenCorpus warm = TokenCorpus.load(cache, messages);
+        // A cache hit reads the file in place rather than replacing it.
+        assertEquals(written, files());
+        assertEquals(fileKey,
+                     Files.readAttributes(written.get(0), BasicFileAttributes.class).fileKey());
+        assertArrayEquals(cold.terms, warm.terms);
+        assertArrayEquals(cold.ids, warm.ids);
+        assertArrayEquals(cold.counts, warm.counts);
+        assertArrayEquals(cold.sizes, warm.sizes);
+
+        Vectorizer expected = new Vectorizer();
+        double[][] matrix = expected.fitTransform(messages);
+        for (TokenCorpus corpus : new TokenCorpus[]{cold, warm}) {
+            Vectorizer actual = new Vectorizer();
+            assertArrayEquals(matrix, actual.fitTransform(corpus));
+            assertEquals(expected.size(), actual.size());
+            for (int j = 0; j < expected.size(); j += 1) {
+                assertEquals(expected.getFeature(j), actual.getFeature(j));
+            }
+            // Equal design vectors for new texts mean equal idf and average length.
+            assertArrayEquals(expected.transform("Free prize, call now"),
+                              actual.transform("Free prize, call now"));
+        }
+    }
+}
@@ -0,0 +1,43 @@
+import jdk.incubator.vector.*;
+
+// Counts data points for GiniSplitter with SIMD instructions from the incubating Java Vector API.
+// The incubator module must be named explicitly to compile and to use this class:
+//
+//     javac --add-modules jdk.incubator.vector VectorCounter.java
+//     java --add-modules jdk.incubator.vector ...
+//
+// Nothing else refers to this class, so compiling TextClassifier or Server does not need the
+// module. GiniSplitter loads it only if the module is present and falls back to scalar code
+// otherwise.
+public class VectorCounter implements GiniSplitter.Counter {
+    // The widest vector shape supported by the hardware, such as 4 doubles for AVX2.
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    // Returns true if the hardware has vectors wider than one double, so that counting with vectors
+    // is faster than scalar code.
+    public static boolean supported() {
+        return SPECIES.length() > 1;
+    }
+
+    // Returns the number of data points with a true label and a value at most the threshold.
+    public int count(double[] column, boolean[] labels, double threshold) {
+        int count = 0;
+        int i = 0;
+        int bound = SPECIES.loopBound(labels.length);
+        for (; i < bound; i += SPECIES.length()) {
+            VectorMask<Double> below = DoubleVector.fromArray(SPECIES, column, i)
+                                                   .compare(VectorOperators.LE, threshold);
+            count += below.and(VectorMask.fromArray(SPECIES, labels, i)).trueCount();
+        }
+        for (; i < labels.length; i += 1) {
+            if (labels[i] && column[i] <= threshold) {
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    public String toString() {
+        return "vector " + SPECIES.vectorBitSize() + "-bit";
+    }
+}
@@ -1,4 +1,7 @@
+import java.io.*;
+import java.nio.file.*;
 import java.util.*;
+import java.util.function.*;
 import java.util.regex.*;
 import java.util.stream.*;
 
@@ -10,58 +13,331 @@ public class Vectorizer {
     private String[] features;
     // Inverse document frequency for each feature to reduce the importance of frequent terms.
     private double[] idf;
-
-    // Maximum proportion of documents that a term can appear in.
-    private static final double MAX_DF = 0.05;
+    // Index of each feature in the features array.
+    private Map<String, Integer> indices;
+    // BM25+ value of each feature for documents that do not contain it.
+    private double[] floor;
+    // Index of each feature in design vectors, or null if features are numbered consecutively.
+    private int[] positions;
+    // The length of design vectors.
+    private int length;
+    // Texts seen by partialFitTransform as term ids, one corpus per call, or null if the model was
+    // fit all at once.
+    private List<TokenCorpus> corpus;
+    // Document frequency for each term in the texts seen by partialFitTransform.
+    private Map<String, Integer> df;
     // Minimum proportion of documents that a term needs to appear.
-    private static final double MIN_DF = 0.002;
+    private final double minDf;
+    // Maximum proportion of documents that a term can appear in.
+    private final double maxDf;
     // BM25 calibration parameter for term-frequency scaling.
-    private static final double K1 = 1.2;
+    private final double k1;
     // BM25 calibration parameter for document length scaling.
-    private static final double B = 0.75;
+    private final double b;
+
+    // The default maximum proportion of documents that a term can appear in.
+    public static final double MAX_DF = 0.05;
+    // The default minimum proportion of documents that a term needs to appear.
+    public static final double MIN_DF = 0.002;
+    // The default BM25 calibration parameter for term-frequency scaling.
+    public static final double K1 = 1.2;
+    // The default BM25 calibration parameter for document length scaling.
+    public static final double B = 0.75;
     // BM25 calibration parameter for long, matching documents.
     private static final double DELTA = 1.0;
+    // Version of the Tokenizer and Stemmer output. Increment whenever either changes so that cached
+    // token corpora are rebuilt.
+    public static final int TOKENIZER_VERSION = 1;
+    // Maximum number of distinct words whose stems are cached, set by the stems.cache.size
+    // property. A size of 0 disables the cache.
+    private static final int STEM_CACHE_SIZE = Integer.getInteger("stems.cache.size", 1 << 16);
+    // Stems of frequent words shared by every Vectorizer.
+    private static final StemCache STEMS = new StemCache(STEM_CACHE_SIZE, Stemmer::stem);
 
     // Constructs an unfitted Vectorizer model.
     public Vectorizer() {
+        this(MIN_DF, MAX_DF, K1, B);
+    }
+
+    // Constructs an unfitted Vectorizer model with the given minimum and maximum proportion of
+    // documents that a term can appear in, and the given BM25 calibration parameters.
+    public Vectorizer(double minDf, double maxDf, double k1, double b) {
+        if (minDf < 0 || maxDf < minDf || k1 < 0 || b < 0 || b > 1) {
+            throw new IllegalArgumentException("invalid vectorizer parameters");
+        }
+        this.minDf = minDf;
+        this.maxDf = maxDf;
+        this.k1 = k1;
+        this.b = b;
         this.averageLength = 0.0;
         this.features = null;
         this.idf = null;
+        this.indices = null;
+        this.floor = null;
+        this.positions = null;
+        this.length = 0;
+        this.corpus = null;
+        this.df = null;
     }
 
     // Fits the model to the given texts and returns this instance.
     public Vectorizer fit(String... texts) {
-        fitStream(texts);
+        fitStream(texts, null);
         return this;
     }
 
-    // Fits the model to the given texts and returns a stream of processed texts.
-    private Stream<BagOfWords> fitStream(String... texts) {
-        int N = texts.length;
-        BagOfWords[] corpus = new BagOfWords[N];
-        Map<String, Integer> df = new HashMap<>();
-        averageLength = 0.0;
-        for (int i = 0; i < N; i += 1) {
+    // Fits the model to the given texts, each counted as many times as its weight, and returns a
+    // stream of processed texts. Every text has weight 1 if weights is null.
+    private Stream<BagOfWords> fitStream(String[] texts, double[] weights) {
+        BagOfWords[] corpus = new BagOfWords[texts.length];
+        for (int i = 0; i < texts.length; i += 1) {
             corpus[i] = BagOfWords.from(texts[i]);
+        }
+        return fitStream(corpus, weights);
+    }
+
+    // Fits the model to the given processed texts, each counted as many times as its weight, and
+    // returns a stream of the processed texts. Every text has weight 1 if weights is null.
+    private Stream<BagOfWords> fitStream(BagOfWords[] corpus, double[] weights) {
+        if (weights != null && weights.length != corpus.length) {
+            throw new IllegalArgumentException("texts length != weights length");
+        }
+        Map<String, Double> df = new LinkedHashMap<>();
+        double N = 0.0;
+        averageLength = 0.0;
+        for (int i = 0; i < corpus.length; i += 1) {
+            double weight = weights == null ? 1.0 : weights[i];
             for (String word : corpus[i].unique()) {
-                df.put(word, df.getOrDefault(word, 0) + 1);
+                df.put(word, df.getOrDefault(word, 0.0) + weight);
             }
-            averageLength += corpus[i].size();
+            averageLength += corpus[i].size() * weight;
+            N += weight;
         }
         averageLength /= N;
-        features = df.keySet().stream().filter(
-            word -> (MIN_DF * N) <= df.get(word) && df.get(word) <= (MAX_DF * N)
+        select(order(df.keySet()), df::get, N);
+        this.corpus = null;
+        this.df = null;
+        return Arrays.stream(corpus);
+    }
+
+    // Fits the model to the given texts together with the texts from all previous calls and returns
+    // the design matrix for every text seen so far, earlier texts first. Only the given texts are
+    // tokenized, and earlier texts are kept as term ids so that they are vectorized again with
+    // array lookups alone, since idf and the average length change with every call. Features that
+    // stay within the document frequency bounds keep their indices so that splits learned from
+    // earlier matrices remain valid. Features that fall outside the bounds are removed, leaving 0
+    // at their indices, and terms that newly fall within the bounds are appended. The texts are
+    // held until the next fit, so compact the vectorizer before serving it.
+    public double[][] partialFitTransform(String... texts) {
+        if (corpus == null) {
+            if (features != null) {
+                throw new IllegalStateException("cannot partialFitTransform after fit");
+            }
+            corpus = new ArrayList<>();
+            df = new LinkedHashMap<>();
+        }
+        TokenCorpus added = TokenCorpus.from(texts);
+        for (int i = 0; i < added.size(); i += 1) {
+            for (int id : added.ids[i]) {
+                String word = added.terms[id];
+                df.merge(word, 1, Integer::sum);
+            }
+        }
+        corpus.add(added);
+        int N = 0;
+        averageLength = 0.0;
+        for (TokenCorpus part : corpus) {
+            for (int size : part.sizes) {
+                averageLength += size;
+            }
+            N += part.size();
+        }
+        averageLength /= N;
+        Map<String, Integer> previous = new LinkedHashMap<>();
+        for (int j = 0; features != null && j < features.length; j += 1) {
+            previous.put(features[j], positions == null ? j : positions[j]);
+        }
+        List<String> candidates = new ArrayList<>(previous.keySet());
+        for (String word : order(df.keySet())) {
+            if (!previous.containsKey(word)) {
+                candidates.add(word);
+            }
+        }
+        int next = length;
+        select(candidates, df::get, N);
+        int[] kept = new int[features.length];
+        for (int j = 0; j < features.length; j += 1) {
+            Integer position = previous.get(features[j]);
+            if (position == null) {
+                position = next;
+                next += 1;
+            }
+            kept[j] = position;
+        }
+        if (next > features.length) {
+            positions = kept;
+            length = next;
+        }
+        return corpus.stream().flatMap(part -> {
+            int[] feature = new int[part.terms.length];
+            for (int t = 0; t < feature.length; t += 1) {
+                feature[t] = indices.getOrDefault(part.terms[t], -1);
+            }
+            return IntStream.range(0, part.size()).parallel().mapToObj(
+                i -> vector(part.ids[i], part.counts[i], part.sizes[i], feature)
+            );
+        }).toArray(double[][]::new);
+    }
+
+    // Returns the given terms, which must be in order of first occurrence, in feature order: by
+    // hash bucket in a table sized for this many terms, then by first occurrence. This is the order
+    // that features had when they were taken from a HashMap, kept so that ties between equally
+    // good splits still go to the same feature. Sorting explicitly gives every fit, from texts or
+    // from term ids, the same features in the same order.
+    private static List<String> order(Collection<String> terms) {
+        int capacity = 16;
+        while (terms.size() > capacity / 4 * 3) {
+            capacity *= 2;
+        }
+        int mask = capacity - 1;
+        List<String> result = new ArrayList<>(terms);
+        // List.sort is stable, so terms in the same bucket stay in order of first occurrence.
+        result.sort(Comparator.comparingInt(term -> {
+            int hash = term.hashCode();
+            return (hash ^ (hash >>> 16)) & mask;
+        }));
+        return result;
+    }
+
+    // Sets the features to the given candidate terms, in order, whose document frequency among N
+    // documents is within the minDf and maxDf bounds, and computes their idf and indices.
+    private void select(Collection<String> candidates, ToDoubleFunction<String> df, double N) {
+        features = candidates.stream().filter(
+            word -> (minDf * N) <= df.applyAsDouble(word) && df.applyAsDouble(word) <= (maxDf * N)
         ).toArray(String[]::new);
         idf = Arrays.stream(features).mapToDouble(
-            word -> Math.log((N - df.get(word) + 0.5) / (df.get(word) + 0.5))
+            word -> Math.log((N - df.applyAsDouble(word) + 0.5) / (df.applyAsDouble(word) + 0.5))
         ).toArray();
-        return Arrays.stream(corpus);
+        index();
+    }
+
+    // Computes the feature indices and floor values for the current features and idf.
+    private void index() {
+        positions = null;
+        length = features.length;
+        indices = new HashMap<>();
+        floor = new double[features.length];
+        for (int j = 0; j < features.length; j += 1) {
+            indices.put(features[j], j);
+            floor[j] = idf[j] * DELTA;
+        }
     }
 
     // Fits the model to the given texts and returns the transformed design matrix. Equivalent to
     // fit followed by transform, but more efficiently implemented.
     public double[][] fitTransform(String... texts) {
-        return matrix(fitStream(texts));
+        return matrix(fitStream(texts, null));
+    }
+
+    // Fits the model to the given processed texts and returns the transformed design matrix. The
+    // same processed texts can be reused to fit many models without tokenizing them again.
+    public double[][] fitTransform(BagOfWords[] documents) {
+        return matrix(fitStream(documents, null));
+    }
+
+    // Fits the model to the given token corpus and returns the transformed design matrix. Document
+    // frequencies and design vectors are computed from term ids without processing any text, and
+    // the result is identical to fitTransform on the texts the corpus was built from.
+    public double[][] fitTransform(TokenCorpus corpus) {
+        return fitTransform(corpus, null);
+    }
+
+    // Fits the model to the given token corpus, each text counted as many times as its weight, and
+    // returns the transformed design matrix with one row per text. Every text has weight 1 if
+    // weights is null.
+    public double[][] fitTransform(TokenCorpus corpus, double[] weights) {
+        int[] feature = fit(corpus, weights);
+        return IntStream.range(0, corpus.size()).parallel().mapToObj(
+            i -> vector(corpus.ids[i], corpus.counts[i], corpus.sizes[i], feature)
+        ).toArray(double[][]::new);
+    }
+
+    // Fits the model to the given token corpus and returns the transformed design matrix stored
+    // off the heap, memory-mapped to the given file or in direct memory if the file is null. Values
+    // are written straight from the term ids into the matrix without creating a design vector or
+    // processing any text, so the only heap used besides the model is the corpus itself. The
+    // caller must close the matrix.
+    public OffHeapMatrix fitTransform(Path file, TokenCorpus corpus) throws IOException {
+        return fitTransform(file, corpus, null);
+    }
+
+    // Fits the model to the given token corpus, each text counted as many times as its weight, and
+    // returns the transformed design matrix stored off the heap as by fitTransform(file, corpus).
+    // Every text has weight 1 if weights is null.
+    public OffHeapMatrix fitTransform(Path file, TokenCorpus corpus, double[] weights)
+            throws IOException {
+        int[] feature = fit(corpus, weights);
+        OffHeapMatrix result;
+        if (file == null) {
+            result = new OffHeapMatrix(corpus.size(), features.length);
+        } else {
+            result = new OffHeapMatrix(corpus.size(), features.length, file);
+        }
+        for (int j = 0; j < features.length; j += 1) {
+            result.fill(j, floor[j]);
+        }
+        IntStream.range(0, corpus.size()).parallel().forEach(i -> {
+            double n = corpus.sizes[i] / averageLength;
+            for (int k = 0; k < corpus.ids[i].length; k += 1) {
+                int j = feature[corpus.ids[i][k]];
+                if (j >= 0) {
+                    result.set(i, j, idf[j] * tfn(corpus.counts[i][k], n));
+                }
+            }
+        });
+        return result;
+    }
+
+    // Fits the model to the given token corpus, each text counted as many times as its weight, and
+    // returns the feature index of each term id, or -1 for terms that are not features. Every text
+    // has weight 1 if weights is null.
+    private int[] fit(TokenCorpus corpus, double[] weights) {
+        if (weights != null && weights.length != corpus.size()) {
+            throw new IllegalArgumentException("texts length != weights length");
+        }
+        double N = 0.0;
+        double[] df = new double[corpus.terms.length];
+        averageLength = 0.0;
+        for (int i = 0; i < corpus.size(); i += 1) {
+            double weight = weights == null ? 1.0 : weights[i];
+            for (int id : corpus.ids[i]) {
+                df[id] += weight;
+            }
+            averageLength += corpus.sizes[i] * weight;
+            N += weight;
+        }
+        averageLength /= N;
+        Map<String, Integer> ids = new HashMap<>();
+        for (int t = 0; t < corpus.terms.length; t += 1) {
+            ids.put(corpus.terms[t], t);
+        }
+        select(order(Arrays.asList(corpus.terms)), word -> df[ids.get(word)], N);
+        this.corpus = null;
+        this.df = null;
+
+        int[] feature = new int[corpus.terms.length];
+        Arrays.fill(feature, -1);
+        for (int j = 0; j < features.length; j += 1) {
+            feature[ids.get(features[j])] = j;
+        }
+        return feature;
+    }
+
+    // Fits the model to the given texts, each counted as many times as its weight, and returns the
+    // transformed design matrix with one row per text. Collapsing duplicate texts into one weighted
+    // text fits the same model as fitting every copy.
+    public double[][] fitTransform(String[] texts, double[] weights) {
+        return matrix(fitStream(texts, weights));
     }
 
     // Returns the name of the feature for the given index.
@@ -69,9 +345,90 @@ public class Vectorizer {
         if (averageLength == 0.0 || features == null || idf == null) {
             throw new IllegalStateException("must fit before getFeature");
         }
+        if (positions != null) {
+            int j = Arrays.binarySearch(positions, index);
+            if (j < 0) {
+                throw new IllegalArgumentException("feature " + index + " was removed");
+            }
+            return features[j];
+        }
         return features[index];
     }
 
+    // Returns a new fitted Vectorizer with only the features at the given indices, such as the
+    // features used by the splits of a trained decision tree. Its design vectors keep each
+    // remaining feature at its original index, so the tree classifies and prints exactly as before,
+    // but only the remaining features are stored and computed. Every other entry of a design vector
+    // is 0.
+    public Vectorizer compact(int... indices) {
+        if (averageLength == 0.0 || features == null || idf == null) {
+            throw new IllegalStateException("must fit before compact");
+        }
+        int[] sorted = Arrays.stream(indices).distinct().sorted().toArray();
+        Vectorizer result = new Vectorizer(minDf, maxDf, k1, b);
+        result.averageLength = averageLength;
+        result.features = new String[sorted.length];
+        result.idf = new double[sorted.length];
+        for (int j = 0; j < sorted.length; j += 1) {
+            int index = positions == null ? sorted[j] : Arrays.binarySearch(positions, sorted[j]);
+            if (index < 0 || index >= features.length) {
+                throw new IllegalArgumentException("no feature " + sorted[j]);
+            }
+            result.features[j] = features[index];
+            result.idf[j] = idf[index];
+        }
+        result.index();
+        result.positions = sorted;
+        result.length = sorted.length == 0 ? 0 : sorted[sorted.length - 1] + 1;
+        return result;
+    }
+
+    // Returns the number of features stored by this vectorizer.
+    public int size() {
+        if (averageLength == 0.0 || features == null || idf == null) {
+            throw new IllegalStateException("must fit before size");
+        }
+        return features.length;
+    }
+
+    // Returns the cache of stems shared by every Vectorizer, for example to report its hit rate.
+    public static StemCache stemCache() {
+        return STEMS;
+    }
+
+    // Returns the approximate number of bytes of heap used by this fitted model, including the
+    // texts held for partialFitTransform. Assumes compressed object pointers and compact strings.
+    public long bytes() {
+        if (averageLength == 0.0 || features == null || idf == null) {
+            throw new IllegalStateException("must fit before bytes");
+        }
+        // Each feature has its name, an array slot, idf and floor values, an index map entry with
+        // its share of the table, and a boxed index, plus its position if positions are kept.
+        long total = 0;
+        for (String feature : features) {
+            total += bytes(feature) + 4 + 8 + 8 + 48 + 16 + (positions == null ? 0 : 4);
+        }
+        if (corpus != null) {
+            for (TokenCorpus part : corpus) {
+                for (String term : part.terms) {
+                    total += bytes(term) + 4;
+                }
+                for (int i = 0; i < part.size(); i += 1) {
+                    total += 2 * (16 + 4L * part.ids[i].length) + 8 + 4;
+                }
+            }
+            // Each document frequency entry with its share of the table and a boxed count. The
+            // terms are shared with the corpus.
+            total += 64L * df.size();
+        }
+        return total;
+    }
+
+    // Returns the approximate number of bytes of heap used by the given string and its characters.
+    private static long bytes(String text) {
+        return 24 + ((16 + text.length() + 7) & ~7);
+    }
+
     // Returns the design matrix for the given texts.
     public double[][] transform(String... texts) {
         if (averageLength == 0.0 || features == null || idf == null) {
@@ -80,26 +437,88 @@ public class Vectorizer {
         return matrix(Arrays.stream(texts).map(BagOfWords::from));
     }
 
+    // Returns the design matrix for the given processed texts.
+    public double[][] transform(BagOfWords[] documents) {
+        if (averageLength == 0.0 || features == null || idf == null) {
+            throw new IllegalStateException("must fit before transform");
+        }
+        return matrix(Arrays.stream(documents));
+    }
+
+    // Returns the design vector for the given processed text. Together with BagOfWords.from, this
+    // splits transform into separate text processing and vectorizing steps.
+    public double[] transform(BagOfWords document) {
+        if (averageLength == 0.0 || features == null || idf == null) {
+            throw new IllegalStateException("must fit before transform");
+        }
+        return vector(document);
+    }
+
     // Returns the design matrix for the BM25+ representation of the given documents.
     private double[][] matrix(Stream<BagOfWords> documents) {
         return documents.parallel().map(this::vector).toArray(double[][]::new);
     }
 
-    // Returns the design vector for the BM25+ representation of the given document.
+    // Returns the design vector for the BM25+ representation of the given document. Features that
+    // do not appear in the document take their floor value, so only the document's own terms or
+    // only the features, whichever are fewer, are looked up.
     private double[] vector(BagOfWords document) {
-        return IntStream.range(0, features.length).mapToDouble(
-            j -> idf[j] * tfn(document.tf(features[j]), document.size() / averageLength)
-        ).toArray();
+        double[] result = floorVector();
+        double n = document.size() / averageLength;
+        if (features.length < document.unique().size()) {
+            // Look up each feature in the document instead when there are fewer features than
+            // terms, as in a compacted vectorizer.
+            for (int j = 0; j < features.length; j += 1) {
+                int tf = document.tf(features[j]);
+                if (tf > 0) {
+                    result[positions == null ? j : positions[j]] = idf[j] * tfn(tf, n);
+                }
+            }
+            return result;
+        }
+        for (String term : document.unique()) {
+            Integer j = indices.get(term);
+            if (j != null) {
+                result[positions == null ? j : positions[j]] = idf[j] * tfn(document.tf(term), n);
+            }
+        }
+        return result;
+    }
+
+    // Returns the design vector for a text with the given term ids, the count of each term, and the
+    // given total number of terms, where feature maps each term id to its feature index or -1.
+    private double[] vector(int[] ids, int[] counts, int size, int[] feature) {
+        double[] result = floorVector();
+        double n = size / averageLength;
+        for (int k = 0; k < ids.length; k += 1) {
+            int j = feature[ids[k]];
+            if (j >= 0) {
+                result[positions == null ? j : positions[j]] = idf[j] * tfn(counts[k], n);
+            }
+        }
+        return result;
+    }
+
+    // Returns a new design vector with every feature at its floor value.
+    private double[] floorVector() {
+        if (positions == null) {
+            return floor.clone();
+        }
+        double[] result = new double[length];
+        for (int j = 0; j < positions.length; j += 1) {
+            result[positions[j]] = floor[j];
+        }
+        return result;
     }
 
     // Returns the BM25+ normalized term frequency value.
     // http://sifaka.cs.uiuc.edu/~ylv2/pub/cikm11-lowerbound.pdf
-    private static double tfn(double tf, double n) {
-        return ((tf * (K1 + 1)) / (tf + K1 * ((1 - B) + B * n))) + DELTA;
+    private double tfn(double tf, double n) {
+        return ((tf * (k1 + 1)) / (tf + k1 * ((1 - b) + b * n))) + DELTA;
     }
 
     // Bag-of-words text representation that stores term-frequency counts.
-    private static class BagOfWords {
+    public static class BagOfWords {
         private Map<String, Integer> counts;
         private int size;
 
@@ -115,7 +534,39 @@ public class Vectorizer {
 
         // Returns a new BagOfWords after tokenizing and stemming the given text.
         public static BagOfWords from(String text) {
-            return new BagOfWords(Tokenizer.tokenize(text).map(Stemmer::stem));
+            return new BagOfWords(Tokenizer.tokenize(text).map(STEMS::get));
+        }
+
+        // Returns a new empty BagOfWords, for example to accumulate the words of several texts.
+        public static BagOfWords empty() {
+            return new BagOfWords(Stream.empty());
+        }
+
+        // Adds every word in the given bag to this bag.
+        public void add(BagOfWords other) {
+            for (Map.Entry<String, Integer> entry : other.counts.entrySet()) {
+                counts.merge(entry.getKey(), entry.getValue(), Integer::sum);
+            }
+            size += other.size;
+        }
+
+        // Removes every word in the given bag from this bag, such as the words of a text that was
+        // previously added.
+        public void remove(BagOfWords other) {
+            for (Map.Entry<String, Integer> entry : other.counts.entrySet()) {
+                if (counts.getOrDefault(entry.getKey(), 0) < entry.getValue()) {
+                    throw new IllegalArgumentException("word not in bag: " + entry.getKey());
+                }
+            }
+            for (Map.Entry<String, Integer> entry : other.counts.entrySet()) {
+                int count = counts.get(entry.getKey()) - entry.getValue();
+                if (count == 0) {
+                    counts.remove(entry.getKey());
+                } else {
+                    counts.put(entry.getKey(), count);
+                }
+            }
+            size -= other.size;
         }
 
         // Returns the total number of words in this bag.
@@ -176,13 +627,22 @@ public class Vectorizer {
 
     // Porter stemming algorithm to simplify words: https://tartarus.org/martin/PorterStemmer/
     private static class Stemmer {
-        private static char[] b;
-        private static int j;
-        private static int k;
+        private char[] b;
+        private int j;
+        private int k;
 
+        // Returns the stem of the given word. Each call uses its own Stemmer state so that words
+        // can be stemmed concurrently.
         public static String stem(String word) {
+            return new Stemmer(word).stem();
+        }
+
+        private Stemmer(String word) {
             b = word.toCharArray();
             k = word.length() - 1;
+        }
+
+        private String stem() {
             if (k > 1) {
                 step1();
                 step2();
@@ -194,7 +654,7 @@ public class Vectorizer {
             return new String(b, 0, k + 1);
         }
 
-        private static boolean cons(int i) {
+        private boolean cons(int i) {
             switch (b[i]) {
                 case 'a':
                 case 'e':
@@ -209,7 +669,7 @@ public class Vectorizer {
             }
         }
 
-        private static int m() {
+        private int m() {
             int n = 0;
             int i = 0;
             while (true) {
@@ -247,7 +707,7 @@ public class Vectorizer {
             }
         }
 
-        private static boolean vowels() {
+        private boolean vowels() {
             int i;
             for (i = 0; i <= j; i++) {
                 if (!cons(i)) {
@@ -257,7 +717,7 @@ public class Vectorizer {
             return false;
         }
 
-        private static boolean doublec(int j) {
+        private boolean doublec(int j) {
             if (j < 1) {
                 return false;
             }
@@ -267,7 +727,7 @@ public class Vectorizer {
             return cons(j);
         }
 
-        private static boolean cvc(int i) {
+        private boolean cvc(int i) {
             if (i < 2 || !cons(i) || cons(i - 1) || !cons(i - 2)) {
                 return false;
             }
@@ -278,7 +738,7 @@ public class Vectorizer {
             return true;
         }
 
-        private static boolean ends(String s) {
+        private boolean ends(String s) {
             int l = s.length();
             int o = k - l + 1;
             if (o < 0) {
@@ -293,7 +753,7 @@ public class Vectorizer {
             return true;
         }
 
-        private static void set(String s) {
+        private void set(String s) {
             int l = s.length();
             int o = j + 1;
             for (int i = 0; i < l; i++) {
@@ -302,17 +762,17 @@ public class Vectorizer {
             k = j + l;
         }
 
-        private static void r(String s) {
+        private void r(String s) {
             if (m() > 0) {
                 set(s);
             }
         }
 
-        private static void step1() {
+        private void step1() {
             step1(false);
         }
 
-        private static void step1(boolean y) {
+        private void step1(boolean y) {
             if (b[k] == 's') {
                 if (ends("sses")) {
                     k -= 2;
@@ -352,13 +812,13 @@ public class Vectorizer {
             }
         }
 
-        private static void step2() {
+        private void step2() {
             if (ends("y") && vowels()) {
                 b[k] = 'i';
             }
         }
 
-        private static void step3() {
+        private void step3() {
             if (k == 0) {
                 return;
             }
@@ -465,7 +925,7 @@ public class Vectorizer {
             }
         }
 
-        private static void step4() {
+        private void step4() {
             switch (b[k]) {
                 case 'e':
                     if (ends("icate")) {
@@ -506,7 +966,7 @@ public class Vectorizer {
             }
         }
 
-        private static void step5() {
+        private void step5() {
             if (k == 0) {
                 return;
             }
@@ -600,7 +1060,7 @@ public class Vectorizer {
             }
         }
 
-        private static void step6() {
+        private void step6() {
             j = k;
             if (b[k] == 'e') {
                 int a = m();
@@ -0,0 +1,219 @@
+import java.io.*;
+import java.util.*;
+import java.util.function.*;
+import java.util.stream.*;
+
+// Grows a tree by reusing the split features of a previously-grown tree, retuning their thresholds
+// and regrowing only the leaves that received enough new data points. Each WarmStartSplitter
+// remembers its split so that the grown tree can warm-start the next round of training.
+//
+// Thresholds are retuned rather than kept because Vectorizer.partialFitTransform recomputes idf and
+// the average length on every call, so the same texts have different feature values in each round.
+public class WarmStartSplitter implements Splitter {
+    private double[][] matrix;
+    private boolean[] labels;
+    private boolean[] added;
+    private WarmStartSplitter previous;
+    private Stats stats;
+    private int originalSize;
+    private double minAdded;
+    private boolean label;
+    private int size;
+    private boolean grown;
+    private Splitter.Result result;
+
+    // The default minimum proportion of new data points required to regrow a leaf.
+    private static final double DEFAULT_MIN_ADDED = 0.1;
+
+    // Constructs a new WarmStartSplitter that grows a tree from scratch with the given design
+    // matrix and labels.
+    public WarmStartSplitter(double[][] matrix, boolean[] labels) {
+        this(null, matrix, labels, matrix.length);
+    }
+
+    // Constructs a new WarmStartSplitter that reuses the tree grown by the given previous splitter.
+    // The last added rows of the matrix and labels are new since the previous tree was grown.
+    public WarmStartSplitter(WarmStartSplitter previous, double[][] matrix, boolean[] labels,
+                             int added) {
+        this(previous, matrix, labels, added, DEFAULT_MIN_ADDED);
+    }
+
+    // Constructs a new WarmStartSplitter that reuses the tree grown by the given previous splitter,
+    // regrowing leaves where at least the given proportion of data points are new.
+    public WarmStartSplitter(WarmStartSplitter previous, double[][] matrix, boolean[] labels,
+                             int added, double minAdded) {
+        this(previous, matrix, labels, newRows(labels.length, added), new Stats(), matrix.length,
+             minAdded);
+        if (added < 0 || added > labels.length) {
+            throw new IllegalArgumentException("added must be between 0 and labels length");
+        }
+    }
+
+    // Constructs a new WarmStartSplitter for one node in the tree.
+    private WarmStartSplitter(WarmStartSplitter previous, double[][] matrix, boolean[] labels,
+                              boolean[] added, Stats stats, int originalSize, double minAdded) {
+        if (matrix.length != labels.length) {
+            throw new IllegalArgumentException("matrix length != labels length");
+        }
+        this.matrix = matrix;
+        this.labels = labels;
+        this.added = added;
+        this.previous = previous;
+        this.stats = stats;
+        this.originalSize = originalSize;
+        this.minAdded = minAdded;
+        int countTrue = 0;
+        for (boolean label : labels) {
+            if (label) {
+                countTrue += 1;
+            }
+        }
+        this.size = labels.length;
+        this.label = countTrue > size / 2;
+    }
+
+    // Returns a mask marking the last added of N rows as new.
+    private static boolean[] newRows(int N, int added) {
+        boolean[] result = new boolean[N];
+        Arrays.fill(result, Math.max(0, N - added), N, true);
+        return result;
+    }
+
+    // Returns the split reused from the previous tree with a retuned threshold, a newly-grown
+    // split, or null if this node is a leaf. A reused feature that no longer separates this node's
+    // data well enough to continue splitting, such as a feature removed by the vectorizer, is
+    // replaced by a new split search. The result is remembered and this node's data is released
+    // once it has been split.
+    public Splitter.Result split() {
+        if (grown) {
+            return result;
+        }
+        int countAdded = 0;
+        for (boolean isAdded : added) {
+            if (isAdded) {
+                countAdded += 1;
+            }
+        }
+        if (previous != null && previous.grown && previous.result == null
+                && countAdded < minAdded * size) {
+            stats.reused += 1;
+            return release(null);
+        }
+        // A reused split must meet the same stopping criteria as a new one.
+        GiniSplitter search = new GiniSplitter(matrix, labels, originalSize);
+        GiniSplitter.Split best = null;
+        WarmStartSplitter leftPrevious = null;
+        WarmStartSplitter rightPrevious = null;
+        if (previous != null && previous.grown && previous.result != null) {
+            best = search.best(previous.result.index);
+        }
+        if (best != null) {
+            stats.reused += 1;
+            leftPrevious = (WarmStartSplitter) previous.result.left;
+            rightPrevious = (WarmStartSplitter) previous.result.right;
+        } else {
+            stats.grown += 1;
+            best = search.best();
+            if (best == null) {
+                return release(null);
+            }
+        }
+        int index = best.index;
+        double threshold = best.threshold;
+        IntPredicate left = i -> matrix[i][index] <= threshold;
+        IntPredicate right = left.negate();
+        return release(new Splitter.Result(
+            index, threshold, mask(left, leftPrevious), mask(right, rightPrevious)
+        ));
+    }
+
+    // Remembers the given result, releases this node's data, and returns the result.
+    private Splitter.Result release(Splitter.Result result) {
+        this.result = result;
+        this.grown = true;
+        this.matrix = null;
+        this.labels = null;
+        this.added = null;
+        this.previous = null;
+        return result;
+    }
+
+    // Returns a new WarmStartSplitter containing only data where indices are true for the given
+    // predicate, reusing the given node from the previous tree.
+    private WarmStartSplitter mask(IntPredicate predicate, WarmStartSplitter previous) {
+        int[] indices = IntStream.range(0, size()).filter(predicate).toArray();
+        double[][] newMatrix = new double[indices.length][];
+        boolean[] newLabels = new boolean[indices.length];
+        boolean[] newAdded = new boolean[indices.length];
+        for (int i = 0; i < indices.length; i += 1) {
+            newMatrix[i] = matrix[indices[i]];
+            newLabels[i] = labels[indices[i]];
+            newAdded[i] = added[indices[i]];
+        }
+        return new WarmStartSplitter(previous, newMatrix, newLabels, newAdded, stats, originalSize,
+                                     minAdded);
+    }
+
+    // Returns the majority label for this splitter.
+    public boolean label() {
+        return label;
+    }
+
+    // Returns the number of data points in this splitter.
+    public int size() {
+        return size;
+    }
+
+    // Returns the number of nodes split so far whose split or leaf was reused from the old tree.
+    public int reused() {
+        return stats.reused;
+    }
+
+    // Returns the number of nodes split so far that were grown with a new split search.
+    public int grown() {
+        return stats.grown;
+    }
+
+    // Trains on the given tsv file in the given number of batches, warm-starting each round from
+    // the tree of the round before, and reports how much of each tree was reused.
+    public static void main(String[] args) throws FileNotFoundException {
+        if (args.length < 1) {
+            throw new IllegalArgumentException("java WarmStartSplitter [tsv file] [batches]");
+        }
+        Dataset data = new Dataset(new File(args[0]));
+        int batches = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        Vectorizer vectorizer = new Vectorizer();
+        WarmStartSplitter root = null;
+        for (int k = 1; k <= batches; k += 1) {
+            int from = (int) ((long) data.size() * (k - 1) / batches);
+            int to = (int) ((long) data.size() * k / batches);
+            long start = System.nanoTime();
+            double[][] matrix = vectorizer.partialFitTransform(
+                Arrays.copyOfRange(data.messages, from, to)
+            );
+            boolean[] labels = Arrays.copyOf(data.labels, to);
+            if (root == null) {
+                root = new WarmStartSplitter(matrix, labels);
+            } else {
+                root = new WarmStartSplitter(root, matrix, labels, to - from);
+            }
+            TextClassifier clf = new TextClassifier(vectorizer, root);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            int correct = 0;
+            for (int i = 0; i < to; i += 1) {
+                if (clf.classify(data.messages[i]) == labels[i]) {
+                    correct += 1;
+                }
+            }
+            System.out.printf("%-6d rows: %d features, %d reused, %d grown, %.2f s, "
+                              + "training accuracy %.4f%n", to, vectorizer.size(), root.reused(),
+                              root.grown(), seconds, correct / (double) to);
+        }
+    }
+
+    // Counts of reused and newly-grown nodes shared by all nodes in a tree.
+    private static class Stats {
+        public int reused;
+        public int grown;
+    }
+}
@@ -0,0 +1,108 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.util.*;
+
+public class WarmStartSplitterTest {
+
+    @Test
+    @DisplayName("partialFitTransform keeps feature indices and removes features out of bounds")
+    public void testPartialFitTransformFeatures() {
+        // With a maximum document frequency of 1/2, "apple" is a feature of the first four texts
+        // but not of all six.
+        Vectorizer vectorizer = new Vectorizer(0.0, 0.5, Vectorizer.K1, Vectorizer.B);
+        double[][] before = vectorizer.partialFitTransform(
+            "apple banana", "cherry date", "apple egg", "fig grape"
+        );
+        Map<String, Integer> indices = new HashMap<>();
+        for (int j = 0; j < before[0].length; j += 1) {
+            indices.put(vectorizer.getFeature(j), j);
+        }
+        assertTrue(indices.containsKey("appl"));
+
+        double[][] after = vectorizer.partialFitTransform("apple kiwi", "apple lemon");
+        assertEquals(6, after.length);
+        int apple = indices.get("appl");
+        assertThrows(IllegalArgumentException.class, () -> vectorizer.getFeature(apple));
+        for (double[] row : after) {
+            assertEquals(0.0, row[apple]);
+        }
+        for (Map.Entry<String, Integer> feature : indices.entrySet()) {
+            if (feature.getValue() != apple) {
+                assertEquals(feature.getKey(), vectorizer.getFeature(feature.getValue()));
+            }
+        }
+        assertArrayEquals(after[5], vectorizer.transform("apple lemon")[0]);
+    }
+
+    @Test
+    @DisplayName("warm start without new rows reuses every node")
+    public void testWarmStartWithoutNewRows() throws IOException {
+        Dataset data = new Dataset(new File("spam.tsv"));
+        String[] messages = Arrays.copyOf(data.messages, 1000);
+        boolean[] labels = Arrays.copyOf(data.labels, 1000);
+        Vectorizer vectorizer = new Vectorizer();
+        double[][] matrix = vectorizer.partialFitTransform(messages);
+        WarmStartSplitter first = new WarmStartSplitter(matrix, labels);
+        String expected = print(new TextClassifier(vectorizer, first));
+
+        WarmStartSplitter second = new WarmStartSplitter(first, matrix, labels, 0);
+        assertEquals(expected, print(new TextClassifier(vectorizer, second)));
+        assertEquals(0, second.grown());
+        assertEquals(first.grown(), second.reused());
+    }
+
+    @Test
+    @DisplayName("reused splits keep their feature and retune their threshold")
+    public void testReusedSplitsRetuneThresholds() throws IOException {
+        Dataset data = new Dataset(new File("spam.tsv"));
+        int N = 2000;
+        Vectorizer vectorizer = new Vectorizer();
+        double[][] matrix = vectorizer.partialFitTransform(Arrays.copyOf(data.messages, N / 2));
+        WarmStartSplitter first = new WarmStartSplitter(matrix, Arrays.copyOf(data.labels, N / 2));
+        Splitter.Result before = first.split();
+
+        matrix = vectorizer.partialFitTransform(Arrays.copyOfRange(data.messages, N / 2, N));
+        boolean[] labels = Arrays.copyOf(data.labels, N);
+        WarmStartSplitter second = new WarmStartSplitter(first, matrix, labels, N / 2);
+        Splitter.Result after = second.split();
+        assertEquals(before.index, after.index);
+        double threshold = new GiniSplitter(matrix, labels).best(before.index).threshold;
+        assertEquals(threshold, after.threshold);
+        assertEquals(1, second.reused());
+    }
+
+    @Test
+    @DisplayName("reused splits stop where a tree grown from scratch stops")
+    public void testReusedSplitsStop() {
+        // Five false rows at 0 and five true rows at 1 split perfectly. Once 10000 more false rows
+        // at 0 are added, the same split improves impurity by less than MIN_IMPURITY_DECREASE.
+        int N = 10010;
+        double[][] matrix = new double[N][];
+        boolean[] labels = new boolean[N];
+        for (int i = 0; i < N; i += 1) {
+            labels[i] = i >= 5 && i < 10;
+            matrix[i] = new double[]{labels[i] ? 1.0 : 0.0};
+        }
+        WarmStartSplitter first = new WarmStartSplitter(Arrays.copyOf(matrix, 10),
+                                                        Arrays.copyOf(labels, 10));
+        assertNotNull(first.split());
+
+        WarmStartSplitter second = new WarmStartSplitter(first, matrix, labels, N - 10);
+        assertNull(new GiniSplitter(matrix, labels).split());
+        assertNull(second.split());
+        assertEquals(0, second.reused());
+    }
+
+    // Returns what the given classifier prints.
+    private static String print(TextClassifier clf) {
+        ByteArrayOutputStream b = new ByteArrayOutputStream();
+        PrintStream old = System.out;
+        System.setOut(new PrintStream(b));
+        clf.print();
+        System.out.flush();
+        System.setOut(old);
+        return b.toString();
+    }
+}